@@ -0,0 +1,121 @@
+package com.gbti.snapshotsforai.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the compiled {@link PatternMatcher} against the per-file, per-ancestor regex matching it
+ * replaced, using the default config's exclude and include patterns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatternMatcherBenchmark {
+    private static final String BASE_PATH = "/home/dev/projects/shop";
+    private static final String[] DIRECTORIES = {
+            "src/Controller", "src/Entity", "src/Repository/Doctrine", "templates/admin/partials",
+            "public/assets/js", "config/packages/dev", "tests/Functional/Api", "var/log",
+            "vendor/symfony/http-kernel/Controller", "vendor/doctrine/orm/src/Mapping",
+            "node_modules/lodash/fp", "node_modules/@babel/core/lib/config"
+    };
+    private static final String[] FILE_NAMES = {
+            "UserController.php", "Order.php", "services.yaml", "app.js", "app.min.js", "dev.log",
+            "composer.json", "composer.lock", "README.md", "index.html.twig", ".env", "package.json"
+    };
+
+    private final List<String> absolutePaths = new ArrayList<>();
+    private final List<String[]> segmentedPaths = new ArrayList<>();
+    private List<Pattern> legacyExcludePatterns;
+    private List<Pattern> legacyIncludePatterns;
+    private PatternMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            String relativePath = DIRECTORIES[random.nextInt(DIRECTORIES.length)] + "/"
+                    + FILE_NAMES[random.nextInt(FILE_NAMES.length)];
+            absolutePaths.add(BASE_PATH + "/" + relativePath);
+            segmentedPaths.add(relativePath.split("/"));
+        }
+
+        legacyExcludePatterns = new ArrayList<>();
+        for (String patternStr : DefaultConfig.EXCLUDED_PATTERNS) {
+            patternStr = Pattern.quote(patternStr).replace("*", "\\E.*\\Q");
+            legacyExcludePatterns.add(Pattern.compile("^" + Pattern.quote(BASE_PATH) + "(/.*)?/\\.?" + patternStr + ".*$"));
+        }
+        legacyIncludePatterns = new ArrayList<>();
+        for (String patternStr : DefaultConfig.INCLUDED_PATTERNS) {
+            patternStr = patternStr.replace(".", "\\.").replace("*", ".*");
+            legacyIncludePatterns.add(Pattern.compile(".*/" + patternStr + "$"));
+        }
+
+        matcher = PatternMatcher.compile(DefaultConfig.EXCLUDED_PATTERNS, DefaultConfig.INCLUDED_PATTERNS);
+    }
+
+    @Benchmark
+    public void legacyRegexMatching(Blackhole blackhole) {
+        for (String filePath : absolutePaths) {
+            boolean excluded = matchesAny(filePath, legacyExcludePatterns);
+            boolean included = matchesAny(filePath, legacyIncludePatterns);
+            boolean inExcludedDir = false;
+            Path path = Paths.get(filePath).getParent();
+            while (path != null && !inExcludedDir) {
+                inExcludedDir = matchesAny(path.toString(), legacyExcludePatterns);
+                path = path.getParent();
+            }
+            blackhole.consume((included || !excluded) && !inExcludedDir);
+        }
+    }
+
+    // Worst case for the compiled matcher: every directory segment of every path is checked,
+    // whereas the walker checks each directory only once and prunes excluded subtrees
+    @Benchmark
+    public void compiledSegmentMatching(Blackhole blackhole) {
+        for (String[] segments : segmentedPaths) {
+            boolean accepted = true;
+            StringBuilder relativePath = new StringBuilder();
+            for (int i = 0; i < segments.length - 1 && accepted; i++) {
+                if (i > 0) {
+                    relativePath.append('/');
+                }
+                relativePath.append(segments[i]);
+                accepted = !matcher.isExcludedDirectory(segments[i], relativePath.toString());
+            }
+            if (accepted) {
+                String name = segments[segments.length - 1];
+                accepted = matcher.isIncludedFile(name, relativePath + "/" + name);
+            }
+            blackhole.consume(accepted);
+        }
+    }
+
+    private static boolean matchesAny(String value, List<Pattern> patterns) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(value).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
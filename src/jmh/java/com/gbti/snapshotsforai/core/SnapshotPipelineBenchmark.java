@@ -0,0 +1,111 @@
+package com.gbti.snapshotsforai.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stages of a full snapshot over a generated project tree, run without an IDE: walking with the
+ * default patterns, filtering a path list, building and rendering the structure, writing the file
+ * bodies, and the whole snapshot end to end. Run with {@code -prof gc} (the default in build.gradle)
+ * to see allocations next to the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class SnapshotPipelineBenchmark {
+    @Param({"flat", "deep"})
+    public String layout;
+
+    @Param({"1000", "20000", "200000"})
+    public int files;
+
+    private Path root;
+    private String basePath;
+    private SnapshotConfig config;
+    private List<String> allFiles;
+    private List<String> projectFiles;
+    private List<String> selectedFiles;
+    private Path output;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = SyntheticProject.generate(layout, files, 42);
+        basePath = root.toString().replace('\\', '/');
+        // The render cache would turn every iteration after the first into a copy from memory
+        config = SnapshotConfig.parse(DefaultConfig.create().put("render_cache_mb", 0).toString());
+        allFiles = new ProjectFileWalker(PatternMatcher.compile(List.of(), List.of())).walk(root, () -> {
+        });
+        projectFiles = new ProjectFileWalker(config.getMatcher()).walk(root, () -> {
+        });
+        selectedFiles = SnapshotGenerator.filterOutBinaryFiles(projectFiles);
+        output = Files.createTempFile("snapshot-bench-", ".md");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticProject.delete(root);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public List<String> walk() throws IOException {
+        return new ProjectFileWalker(config.getMatcher()).walk(root, () -> {
+        });
+    }
+
+    // Patterns applied to a list of paths that didn't come from a walk, then the binary extension filter
+    @Benchmark
+    public List<String> filter() {
+        return SnapshotGenerator.filterOutBinaryFiles(SnapshotGenerator.filterByPatterns(allFiles, basePath, config, null));
+    }
+
+    @Benchmark
+    public void structure(Blackhole blackhole) throws IOException {
+        StringBuilder rendered = new StringBuilder();
+        ProjectTree.build(basePath, projectFiles).render(rendered, config.isCompactStructure(), config.getStructureMaxEntries());
+        blackhole.consume(rendered);
+    }
+
+    @Benchmark
+    public SnapshotManifest renderBodies() throws IOException {
+        return generate(null, selectedFiles);
+    }
+
+    @Benchmark
+    public SnapshotManifest fullSnapshot() throws IOException {
+        List<String> walked = new ProjectFileWalker(config.getMatcher()).walk(root, () -> {
+        });
+        return generate(walked, SnapshotGenerator.filterOutBinaryFiles(walked));
+    }
+
+    private SnapshotManifest generate(List<String> structureFiles, List<String> selection) throws IOException {
+        FileContentReader contentReader = new FileContentReader(config.getMaxFileBytes());
+        SnapshotGenerator generator = new SnapshotGenerator(config, contentReader, new RenderCache(0),
+                new TokenBudget(config.getMaxTokens()), SnapshotGenerator.Progress.NONE, new SnapshotMetrics());
+        try (SnapshotWriter writer = new SnapshotWriter(output, contentReader, config.getRedactor())) {
+            writer.append("Benchmark prompt\n\n");
+            return generator.write(writer, basePath, structureFiles, selection, null, null, null,
+                    output.getFileName().toString());
+        }
+    }
+}
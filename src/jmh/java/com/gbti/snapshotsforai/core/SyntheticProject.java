@@ -0,0 +1,94 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates a throwaway project tree for the benchmarks. Roughly 40% of the files live under
+ * {@code vendor} and 20% under {@code node_modules}, as in a typical PHP project with a frontend
+ * build, and about one file in ten is binary: half recognizable by extension, half only by content.
+ */
+final class SyntheticProject {
+    private static final String[] SOURCE_EXTENSIONS = {".php", ".php", ".php", ".js", ".json", ".twig", ".md", ".yaml"};
+    private static final String[] WORDS = {
+            "return", "$this", "->", "public", "function", "array", "null", "foreach", "if", "else",
+            "namespace", "use", "class", "private", "static", "string", "int", "=", "(", ")", "{", "}", ";"
+    };
+
+    private SyntheticProject() {
+    }
+
+    /**
+     * @param layout {@code flat} puts files in a few wide directories, {@code deep} nests them up to eight levels
+     */
+    static Path generate(String layout, int fileCount, long seed) throws IOException {
+        Path root = Files.createTempDirectory("snapshots-bench-");
+        Random random = new Random(seed);
+        boolean deep = "deep".equals(layout);
+        for (int i = 0; i < fileCount; i++) {
+            int bucket = random.nextInt(10);
+            String top = bucket < 4 ? "vendor/package" + random.nextInt(40)
+                    : bucket < 6 ? "node_modules/module" + random.nextInt(60)
+                    : "src";
+            StringBuilder dir = new StringBuilder(top);
+            int levels = deep ? 1 + random.nextInt(8) : 1;
+            for (int level = 0; level < levels; level++) {
+                dir.append("/dir").append(random.nextInt(deep ? 6 : Math.max(1, fileCount / 500)));
+            }
+
+            Path directory = root.resolve(dir.toString());
+            Files.createDirectories(directory);
+            int kind = random.nextInt(20);
+            if (kind == 0) {
+                writeBinary(directory.resolve("image" + i + ".png"), random);
+            } else if (kind == 1) {
+                writeBinary(directory.resolve("data" + i + ".dat"), random);
+            } else {
+                String extension = SOURCE_EXTENSIONS[random.nextInt(SOURCE_EXTENSIONS.length)];
+                writeText(directory.resolve("File" + i + extension), random);
+            }
+        }
+        Files.writeString(root.resolve("composer.json"), "{\"require\": {}}\n");
+        Files.writeString(root.resolve(".env"), "APP_KEY=base64:c2VjcmV0\nDB_PASSWORD=secret\n");
+        return root;
+    }
+
+    static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    // Between 200 bytes and 4 KB of source-like text in short lines
+    private static void writeText(Path file, Random random) throws IOException {
+        int size = 200 + random.nextInt(3900);
+        StringBuilder text = new StringBuilder(size + 64);
+        int lineLength = 0;
+        while (text.length() < size) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            text.append(word);
+            lineLength += word.length();
+            if (lineLength > 60 || random.nextInt(12) == 0) {
+                text.append('\n');
+                lineLength = 0;
+            } else {
+                text.append(' ');
+            }
+        }
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBinary(Path file, Random random) throws IOException {
+        byte[] bytes = new byte[512 + random.nextInt(4096)];
+        random.nextBytes(bytes);
+        bytes[0] = 0;
+        Files.write(file, bytes);
+    }
+}
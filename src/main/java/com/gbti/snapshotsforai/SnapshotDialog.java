@@ -1,79 +1,199 @@
 package com.gbti.snapshotsforai;
 
+import com.gbti.snapshotsforai.core.FileContentReader;
+import com.gbti.snapshotsforai.core.TokenEstimator;
+import com.gbti.snapshotsforai.services.SnapshotService;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.FileEditorManagerListener;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogWrapper;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.ui.CollectionListModel;
+import com.intellij.ui.DocumentAdapter;
+import com.intellij.ui.JBColor;
+import com.intellij.ui.SearchTextField;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.Alarm;
 import com.intellij.util.messages.MessageBusConnection;
+import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class SnapshotDialog extends DialogWrapper {
-    private final List<JCheckBox> fileCheckBoxes = new ArrayList<>();
+    private static final String ALL_FILES_TEXT =
+            "<html><i>All applicable files located in the project will be included in the snapshot markdown.</i></html>";
+    private static final String GIT_FILES_TEXT =
+            "<html><i>Modified, staged and untracked files will be included in the snapshot markdown.</i></html>";
+
+    private static final int FILE_EVENT_DEBOUNCE_MS = 150;
+
+    // Open files in editor order with their check state; survives filtering and editor changes
+    private final Map<String, Boolean> fileSelection = new LinkedHashMap<>();
+    // Editor events collected during the debounce window: true = opened, false = closed
+    private final Map<String, Boolean> pendingFileEvents = new LinkedHashMap<>();
+    private final CollectionListModel<String> visibleFiles = new CollectionListModel<>();
+    private final JBList<String> fileList;
+    private final SearchTextField filterField;
+    private final Alarm fileEventAlarm;
     private final JTextField promptField;
     private final JCheckBox includeEntireProjectStructureCheckBox;
     private final JCheckBox includeAllProjectFilesCheckBox;
+    private final JCheckBox changesOnlyCheckBox;
+    private final JCheckBox relatedFilesCheckBox;
+    private final JCheckBox gitChangesCheckBox;
+    private final JTextField gitBaseRefField;
+    private final JCheckBox gitDiffHunksCheckBox;
     private final JPanel filesPanel;
     private final JLabel allFilesLabel;
-    private final JScrollPane scrollPane;
     private final Project project;
     private final JButton toggleButton;
     private MessageBusConnection connection;
-
-    public SnapshotDialog(@Nullable Project project, String defaultPrompt, boolean defaultIncludeEntireProjectStructure, boolean defaultIncludeAllFiles) {
+    private final long maxTokens;
+    private final boolean phpOutline;
+    private final JLabel tokenEstimateLabel = new JLabel();
+    // Per-file estimates keyed by path, reused while the file's modification stamp is unchanged
+    private final Map<String, long[]> tokenEstimates = new HashMap<>();
+
+    public SnapshotDialog(@Nullable Project project, String defaultPrompt, boolean defaultIncludeEntireProjectStructure, boolean defaultIncludeAllFiles,
+                          String defaultGitBaseRef, boolean defaultGitDiffHunks, boolean defaultIncludeRelatedFiles,
+                          long maxTokens, boolean phpOutline) {
         super(project);
         this.project = project;
+        this.maxTokens = maxTokens;
+        this.phpOutline = phpOutline;
         setTitle("Generate Markdown Snapshot");
 
         promptField = new JTextField(defaultPrompt);
+        promptField.getDocument().addDocumentListener(new DocumentAdapter() {
+            @Override
+            protected void textChanged(@NotNull DocumentEvent e) {
+                updateTokenEstimate();
+            }
+        });
         includeEntireProjectStructureCheckBox = new JCheckBox("Include entire project structure");
         includeEntireProjectStructureCheckBox.setSelected(defaultIncludeEntireProjectStructure);
 
         includeAllProjectFilesCheckBox = new JCheckBox("Include all project files");
         includeAllProjectFilesCheckBox.setSelected(defaultIncludeAllFiles);
-        includeAllProjectFilesCheckBox.addItemListener(e -> toggleFileCheckboxesVisibility(e.getStateChange() == ItemEvent.SELECTED));
+
+        // Selecting by git status replaces both the open files and "Include all project files"
+        gitChangesCheckBox = new JCheckBox("Only files changed in git since");
+        gitBaseRefField = new JTextField(defaultGitBaseRef, 12);
+        gitDiffHunksCheckBox = new JCheckBox("as diffs");
+        gitDiffHunksCheckBox.setSelected(defaultGitDiffHunks);
+        gitDiffHunksCheckBox.setToolTipText("Writes the changed hunks of tracked files instead of their full contents");
+        gitBaseRefField.setEnabled(false);
+        gitDiffHunksCheckBox.setEnabled(false);
+        gitChangesCheckBox.addItemListener(e -> {
+            boolean selected = e.getStateChange() == ItemEvent.SELECTED;
+            if (selected) {
+                includeAllProjectFilesCheckBox.setSelected(false);
+            }
+            gitBaseRefField.setEnabled(selected);
+            gitDiffHunksCheckBox.setEnabled(selected);
+            updateFileSelectionVisibility();
+        });
+
+        // Related files expand a selection, so they have nothing to add to all project files
+        relatedFilesCheckBox = new JCheckBox("Add related files (imports, parent classes, includes)");
+        relatedFilesCheckBox.setSelected(defaultIncludeRelatedFiles);
+        relatedFilesCheckBox.setEnabled(!defaultIncludeAllFiles);
+
+        includeAllProjectFilesCheckBox.addItemListener(e -> {
+            boolean selected = e.getStateChange() == ItemEvent.SELECTED;
+            if (selected) {
+                gitChangesCheckBox.setSelected(false);
+            }
+            relatedFilesCheckBox.setEnabled(!selected);
+            updateFileSelectionVisibility();
+        });
+
+        changesOnlyCheckBox = new JCheckBox("Only changes since the last snapshot");
+        changesOnlyCheckBox.setToolTipText("Lists added, modified and removed files and writes only those");
 
         toggleButton = new JButton("Select/Deselect All");
         toggleButton.setFont(toggleButton.getFont().deriveFont(Font.PLAIN, 10));
         toggleButton.addActionListener(this::toggleFileSelections);
 
-        filesPanel = new JPanel(new GridLayout(0, 1, 5, 5));
-        scrollPane = new JScrollPane(filesPanel);
+        // Only visible rows are rendered, through a single reused checkbox
+        fileList = new JBList<>(visibleFiles);
+        fileList.setCellRenderer(new FileCheckBoxRenderer());
+        fileList.setVisibleRowCount(12);
+        fileList.getEmptyText().setText("No files are currently open.");
+        fileList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = fileList.locationToIndex(e.getPoint());
+                if (index >= 0 && fileList.getCellBounds(index, index).contains(e.getPoint())) {
+                    toggleFile(visibleFiles.getElementAt(index));
+                }
+            }
+        });
+        fileList.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_SPACE) {
+                    for (String filePath : fileList.getSelectedValuesList()) {
+                        toggleFile(filePath);
+                    }
+                    e.consume();
+                }
+            }
+        });
 
-        allFilesLabel = new JLabel("<html><i>All applicable files located in the project will be included in the snapshot markdown.</i></html>");
-        allFilesLabel.setVisible(defaultIncludeAllFiles);
+        filterField = new SearchTextField(false);
+        filterField.addDocumentListener(new DocumentAdapter() {
+            @Override
+            protected void textChanged(@NotNull DocumentEvent e) {
+                applyFilter();
+            }
+        });
 
-        if (defaultIncludeAllFiles) {
-            filesPanel.setVisible(false);
-            scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER);
-            scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
-        }
+        filesPanel = new JPanel(new BorderLayout(5, 5));
+        filesPanel.add(filterField, BorderLayout.NORTH);
+        filesPanel.add(new JBScrollPane(fileList), BorderLayout.CENTER);
+        filesPanel.setVisible(!defaultIncludeAllFiles);
+
+        allFilesLabel = new JLabel(ALL_FILES_TEXT);
+        allFilesLabel.setVisible(defaultIncludeAllFiles);
 
         initFileCheckboxes();
 
+        fileEventAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, getDisposable());
         connection = project.getMessageBus().connect();
         connection.subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerListener() {
             @Override
             public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
-                updateFileCheckboxes();
+                queueFileEvent(file, true);
             }
 
             @Override
             public void fileClosed(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
-                updateFileCheckboxes();
+                queueFileEvent(file, false);
             }
         });
 
@@ -84,29 +204,73 @@ public class SnapshotDialog extends DialogWrapper {
         FileEditorManager fileEditorManager = FileEditorManager.getInstance(project);
         VirtualFile[] openFiles = fileEditorManager.getOpenFiles();
 
-        fileCheckBoxes.clear();
-        filesPanel.removeAll();
-
+        fileSelection.clear();
         for (VirtualFile file : openFiles) {
-            if (!file.getPath().contains("/.snapshots/")) {
-                JCheckBox checkBox = new JCheckBox(file.getPath());
-                checkBox.setSelected(true); // Set checkbox as selected by default
-                fileCheckBoxes.add(checkBox);
-                filesPanel.add(checkBox);
+            if (isSnapshotCandidate(file)) {
+                fileSelection.put(file.getPath(), true); // Set checkbox as selected by default
             }
         }
 
-        if (fileCheckBoxes.isEmpty()) {
-            JLabel noFilesLabel = new JLabel("No files are currently open.");
-            filesPanel.add(noFilesLabel);
+        applyFilter();
+        updateTokenEstimate();
+    }
+
+    private static boolean isSnapshotCandidate(VirtualFile file) {
+        return !file.getPath().contains("/.snapshots/");
+    }
+
+    private void queueFileEvent(VirtualFile file, boolean opened) {
+        if (!isSnapshotCandidate(file)) {
+            return;
         }
+        pendingFileEvents.put(file.getPath(), opened);
+        fileEventAlarm.cancelAllRequests();
+        fileEventAlarm.addRequest(this::applyPendingFileEvents, FILE_EVENT_DEBOUNCE_MS);
+    }
 
-        filesPanel.revalidate();
-        filesPanel.repaint();
+    // Applies a burst of editor events as incremental adds and removes, keeping existing check states
+    private void applyPendingFileEvents() {
+        String filter = getFilterText();
+        for (Map.Entry<String, Boolean> event : pendingFileEvents.entrySet()) {
+            String filePath = event.getKey();
+            if (event.getValue()) {
+                if (!fileSelection.containsKey(filePath)) {
+                    fileSelection.put(filePath, true);
+                    if (matchesFilter(filePath, filter)) {
+                        visibleFiles.add(filePath);
+                    }
+                }
+            } else if (fileSelection.remove(filePath) != null) {
+                visibleFiles.remove(filePath);
+            }
+        }
+        pendingFileEvents.clear();
+        updateTokenEstimate();
+    }
+
+    private void applyFilter() {
+        String filter = getFilterText();
+        List<String> matchingFiles = new ArrayList<>();
+        for (String filePath : fileSelection.keySet()) {
+            if (matchesFilter(filePath, filter)) {
+                matchingFiles.add(filePath);
+            }
+        }
+        visibleFiles.replaceAll(matchingFiles);
+    }
+
+    private String getFilterText() {
+        return filterField.getText().trim().toLowerCase(Locale.ROOT);
     }
 
-    private void updateFileCheckboxes() {
-        SwingUtilities.invokeLater(this::initFileCheckboxes);
+    private static boolean matchesFilter(String filePath, String filter) {
+        return filter.isEmpty() || filePath.toLowerCase(Locale.ROOT).contains(filter);
+    }
+
+    private void toggleFile(String filePath) {
+        fileSelection.computeIfPresent(filePath, (path, selected) -> !selected);
+        fileList.repaint();
+        updateTokenEstimate();
     }
 
     @Nullable
@@ -119,7 +283,7 @@ public class SnapshotDialog extends DialogWrapper {
         promptPanel.add(promptField, BorderLayout.CENTER);
 
         JPanel optionsPanel = new JPanel(new BorderLayout());
-        JPanel optionsLeftPanel = new JPanel(new GridLayout(2, 1, 5, 5));
+        JPanel optionsLeftPanel = new JPanel(new GridLayout(5, 1, 5, 5));
         optionsLeftPanel.add(includeEntireProjectStructureCheckBox);
 
         JPanel includeAllPanel = new JPanel(new BorderLayout());
@@ -128,37 +292,104 @@ public class SnapshotDialog extends DialogWrapper {
 
         optionsLeftPanel.add(includeAllPanel);
 
+        JPanel gitPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        gitPanel.add(gitChangesCheckBox);
+        gitPanel.add(gitBaseRefField);
+        gitPanel.add(gitDiffHunksCheckBox);
+        optionsLeftPanel.add(gitPanel);
+        optionsLeftPanel.add(relatedFilesCheckBox);
+        optionsLeftPanel.add(changesOnlyCheckBox);
+
         optionsPanel.add(promptPanel, BorderLayout.NORTH);
         optionsPanel.add(optionsLeftPanel, BorderLayout.CENTER);
 
         panel.add(optionsPanel, BorderLayout.NORTH);
-        panel.add(scrollPane, BorderLayout.CENTER);
-        panel.add(allFilesLabel, BorderLayout.SOUTH);
+        panel.add(filesPanel, BorderLayout.CENTER);
+        JPanel statusPanel = new JPanel(new BorderLayout(5, 5));
+        statusPanel.add(allFilesLabel, BorderLayout.CENTER);
+        statusPanel.add(tokenEstimateLabel, BorderLayout.EAST);
+        panel.add(statusPanel, BorderLayout.SOUTH);
 
         return panel;
     }
 
-    private void toggleFileCheckboxesVisibility(boolean includeAllFiles) {
-        filesPanel.setVisible(!includeAllFiles);
-        allFilesLabel.setVisible(includeAllFiles);
+    private void toggleFileSelections(ActionEvent e) {
+        // Applies to the files matching the current filter
+        List<String> filePaths = visibleFiles.getItems();
+        boolean selectAll = filePaths.stream().anyMatch(filePath -> !fileSelection.get(filePath));
+        for (String filePath : filePaths) {
+            fileSelection.put(filePath, selectAll);
+        }
+        fileList.repaint();
+        updateTokenEstimate();
+    }
+
+    private void updateFileSelectionVisibility() {
+        boolean gitChanges = gitChangesCheckBox.isSelected();
+        boolean automatic = includeAllProjectFilesCheckBox.isSelected() || gitChanges;
+        filesPanel.setVisible(!automatic);
+        allFilesLabel.setText(gitChanges ? GIT_FILES_TEXT : ALL_FILES_TEXT);
+        allFilesLabel.setVisible(automatic);
+        updateTokenEstimate();
 
-        if (includeAllFiles) {
-            scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER);
-            scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+        filesPanel.revalidate();
+        filesPanel.repaint();
+    }
+
+    // Documents of open files are estimated from their text, everything else from its size. All project
+    // files come from the file index's running total, which leaves out PHP files when they are outlined.
+    private void updateTokenEstimate() {
+        long tokens = TokenEstimator.estimate(promptField.getText());
+        boolean outlinesExcluded = false;
+        if (gitChangesCheckBox.isSelected()) {
+            tokenEstimateLabel.setText("Token estimate not available for git changes");
+            tokenEstimateLabel.setForeground(UIUtil.getLabelForeground());
+            return;
+        }
+        if (includeAllProjectFilesCheckBox.isSelected()) {
+            long projectBytes = project.getService(SnapshotService.class).getIndexedProjectBytes(phpOutline);
+            if (projectBytes < 0) {
+                tokenEstimateLabel.setText("Token estimate available once the file index is built");
+                tokenEstimateLabel.setForeground(UIUtil.getLabelForeground());
+                return;
+            }
+            tokens += TokenEstimator.estimateFromBytes(projectBytes);
+            outlinesExcluded = phpOutline;
         } else {
-            scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
-            scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED); // Corrected to AS_NEEDED
+            for (Map.Entry<String, Boolean> entry : fileSelection.entrySet()) {
+                if (entry.getValue()) {
+                    tokens += estimateFileTokens(entry.getKey());
+                }
+            }
         }
 
-        scrollPane.revalidate();
-        scrollPane.repaint();
+        String text = String.format(Locale.ROOT, "~%,d tokens", tokens);
+        if (outlinesExcluded) {
+            text += " plus PHP outlines";
+        }
+        if (maxTokens > 0) {
+            text += String.format(Locale.ROOT, " of %,d", maxTokens);
+        }
+        tokenEstimateLabel.setText(text);
+        tokenEstimateLabel.setForeground(maxTokens > 0 && tokens > maxTokens ? JBColor.RED : UIUtil.getLabelForeground());
     }
 
-    private void toggleFileSelections(ActionEvent e) {
-        boolean selectAll = fileCheckBoxes.stream().anyMatch(checkBox -> !checkBox.isSelected());
-        for (JCheckBox checkBox : fileCheckBoxes) {
-            checkBox.setSelected(selectAll);
+    private long estimateFileTokens(String filePath) {
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
+        if (file == null || FileContentReader.hasBinaryExtension(filePath)) {
+            return 0;
+        }
+        Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        long stamp = document != null ? document.getModificationStamp() : file.getModificationStamp();
+        long[] cached = tokenEstimates.get(filePath);
+        if (cached != null && cached[0] == stamp) {
+            return cached[1];
         }
+        long tokens = document != null
+                ? TokenEstimator.estimate(document.getImmutableCharSequence())
+                : TokenEstimator.estimateFromBytes(file.getLength());
+        tokenEstimates.put(filePath, new long[]{stamp, tokens});
+        return tokens;
     }
 
     public String getPrompt() {
@@ -173,11 +404,33 @@ public class SnapshotDialog extends DialogWrapper {
         return includeAllProjectFilesCheckBox.isSelected();
     }
 
+    public boolean isGitChangesOnly() {
+        return gitChangesCheckBox.isSelected();
+    }
+
+    public String getGitBaseRef() {
+        return gitBaseRefField.getText().trim();
+    }
+
+    public boolean isGitDiffHunks() {
+        return gitDiffHunksCheckBox.isSelected();
+    }
+
+    public boolean isIncludeRelatedFiles() {
+        return relatedFilesCheckBox.isEnabled() && relatedFilesCheckBox.isSelected();
+    }
+
+    public boolean isChangesOnly() {
+        return changesOnlyCheckBox.isSelected();
+    }
+
     public List<String> getSelectedFiles() {
+        // Editor events still waiting for the debounce are folded in so nothing is lost on OK
+        applyPendingFileEvents();
         List<String> selectedFiles = new ArrayList<>();
-        for (JCheckBox checkBox : fileCheckBoxes) {
-            if (checkBox.isSelected()) {
-                selectedFiles.add(checkBox.getText());
+        for (Map.Entry<String, Boolean> entry : fileSelection.entrySet()) {
+            if (entry.getValue()) {
+                selectedFiles.add(entry.getKey());
             }
         }
         return selectedFiles;
@@ -206,13 +459,12 @@ public class SnapshotDialog extends DialogWrapper {
     }
 
     private void editConfigFile() {
-        String basePath = project.getBasePath();
-        if (basePath == null) {
+        Path configFilePath = project.getService(SnapshotService.class).getConfigPath();
+        if (configFilePath == null) {
             Messages.showErrorDialog("Project base path is null", "Snapshots for AI");
             return;
         }
 
-        Path configFilePath = Paths.get(basePath, ".snapshots", "config.json");
         if (!Files.exists(configFilePath)) {
             Messages.showErrorDialog("Config file not found. Please restart the IDE.", "Snapshots for AI");
             return;
@@ -227,4 +479,20 @@ public class SnapshotDialog extends DialogWrapper {
             Messages.showErrorDialog("Unable to open config file", "Snapshots for AI");
         }
     }
+
+    private class FileCheckBoxRenderer implements ListCellRenderer<String> {
+        private final JCheckBox checkBox = new JCheckBox();
+
+        @Override
+        public Component getListCellRendererComponent(JList<? extends String> list, String value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            checkBox.setText(value);
+            checkBox.setSelected(Boolean.TRUE.equals(fileSelection.get(value)));
+            checkBox.setOpaque(true);
+            checkBox.setFont(list.getFont());
+            checkBox.setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+            checkBox.setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+            return checkBox;
+        }
+    }
 }
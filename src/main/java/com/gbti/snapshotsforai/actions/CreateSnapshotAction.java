@@ -1,28 +1,54 @@
 package com.gbti.snapshotsforai.actions;
 
 import com.gbti.snapshotsforai.SnapshotDialog;
+import com.gbti.snapshotsforai.core.BodyRenderer;
+import com.gbti.snapshotsforai.core.FileContentReader;
+import com.gbti.snapshotsforai.core.FileContentSource;
+import com.gbti.snapshotsforai.core.GitChanges;
+import com.gbti.snapshotsforai.core.GitIgnore;
+import com.gbti.snapshotsforai.core.RenderCache;
+import com.gbti.snapshotsforai.core.SnapshotConfig;
+import com.gbti.snapshotsforai.core.SnapshotDelta;
+import com.gbti.snapshotsforai.core.SnapshotGenerator;
+import com.gbti.snapshotsforai.core.SnapshotManifest;
+import com.gbti.snapshotsforai.core.SnapshotMetrics;
+import com.gbti.snapshotsforai.core.SnapshotWriter;
+import com.gbti.snapshotsforai.core.TokenBudget;
+import com.gbti.snapshotsforai.php.PhpOutlineRenderer;
+import com.gbti.snapshotsforai.php.PhpRelatedFiles;
+import com.gbti.snapshotsforai.services.EditorContentSource;
+import com.gbti.snapshotsforai.services.SnapshotService;
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import com.intellij.ide.plugins.PluginManagerCore;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.extensions.PluginId;
 import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 public class CreateSnapshotAction extends AnAction {
+    private static final Logger LOG = Logger.getInstance(CreateSnapshotAction.class);
+    private static final String PLUGIN_ID = "com.gbti.snapshotsforai";
+
     @Override
     public void actionPerformed(AnActionEvent e) {
         Project project = e.getProject();
@@ -36,29 +62,21 @@ public class CreateSnapshotAction extends AnAction {
             return;
         }
 
-        Path configFilePath = Paths.get(basePath, ".snapshots", "config.json");
-        if (!Files.exists(configFilePath)) {
-            Messages.showErrorDialog("Config file not found. Please restart the IDE.", "Snapshots for AI");
-            return;
-        }
-
-        String configContent;
+        // Parsed once and cached by the service until config.json changes
+        SnapshotConfig config;
+        long configStart = System.nanoTime();
         try {
-            configContent = Files.readString(configFilePath);
+            config = project.getService(SnapshotService.class).getConfig();
         } catch (IOException ex) {
-            Messages.showErrorDialog("Error reading config file: " + ex.getMessage(), "Snapshots for AI");
+            Messages.showErrorDialog(ex.getMessage(), "Snapshots for AI");
             return;
         }
+        long configNanos = System.nanoTime() - configStart;
 
-        JSONObject config = new JSONObject(configContent);
-        JSONObject defaultConfig = config.optJSONObject("default");
-        String defaultPrompt = defaultConfig.optString("default_prompt", "");
-        boolean defaultIncludeEntireProjectStructure = defaultConfig.optBoolean("default_include_entire_project_structure", false);
-        boolean defaultIncludeAllFiles = defaultConfig.optBoolean("default_include_all_files", false);
-        JSONArray excludedPatterns = config.optJSONArray("excluded_patterns");
-        JSONArray includedPatterns = config.optJSONArray("included_patterns");
-
-        SnapshotDialog dialog = new SnapshotDialog(project, defaultPrompt, defaultIncludeEntireProjectStructure, defaultIncludeAllFiles);
+        SnapshotDialog dialog = new SnapshotDialog(project, config.getDefaultPrompt(),
+                config.isDefaultIncludeEntireProjectStructure(), config.isDefaultIncludeAllFiles(),
+                config.getDefaultGitBaseRef(), config.isDefaultGitDiffHunks(), config.isDefaultIncludeRelatedFiles(),
+                config.getMaxTokens(), config.isPhpOutline());
         if (!dialog.showAndGet()) {
             return;
         }
@@ -67,257 +85,254 @@ public class CreateSnapshotAction extends AnAction {
         boolean includeEntireProjectStructure = dialog.isIncludeEntireProjectStructure();
         boolean includeAllFiles = dialog.isIncludeAllProjectFiles();
         List<String> selectedFiles = dialog.getSelectedFiles();
-
-        // If "Include all project files" is checked, get all project files not excluded by patterns
-        if (includeAllFiles) {
-            selectedFiles = getAllProjectFiles(basePath, excludedPatterns, includedPatterns);
-        }
-
-        // Filter out image files except SVGs
-        selectedFiles = filterOutImageFiles(selectedFiles);
-
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH_mm_ss");
-        String timestamp = LocalDateTime.now().format(formatter);
-        String fileName = "snapshot-" + timestamp + ".md";
-
-        StringBuilder markdown = new StringBuilder();
-        markdown.append(prompt).append("\n\n");
-
-        // Add project structure if "Include entire project structure" is checked
-        if (includeEntireProjectStructure) {
-            markdown.append("# Project Structure\n\n");
-            try {
-                List<String> projectFiles = getAllProjectFiles(basePath, excludedPatterns, includedPatterns);
-                markdown.append(formatProjectStructure(basePath, projectFiles));
-            } catch (Exception ex) {
-                markdown.append("Exception occurred while formatting project structure: ").append(ex.getMessage()).append("\n");
-                for (StackTraceElement element : ex.getStackTrace()) {
-                    markdown.append(element.toString()).append("\n");
+        boolean changesOnly = dialog.isChangesOnly();
+        String gitBaseRef = dialog.isGitChangesOnly() ? dialog.getGitBaseRef() : null;
+        boolean gitDiffHunks = dialog.isGitDiffHunks();
+        boolean includeRelatedFiles = dialog.isIncludeRelatedFiles();
+
+        // Generate the snapshot off the EDT; only opening the result happens back on the UI thread
+        new Task.Backgroundable(project, "Creating snapshot", true) {
+            private Path snapshotFile;
+            private IOException error;
+            private boolean noPreviousSnapshot;
+            private final TokenBudget budget = new TokenBudget(config.getMaxTokens());
+            private SnapshotMetrics metrics;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                metrics = new SnapshotMetrics();
+                metrics.phase(SnapshotMetrics.CONFIG).add(configNanos);
+                try {
+                    Path previousManifest = changesOnly ? SnapshotManifest.findLatest(Paths.get(basePath, ".snapshots")) : null;
+                    noPreviousSnapshot = changesOnly && previousManifest == null;
+                    snapshotFile = createSnapshot(indicator, project, basePath, config, prompt, includeEntireProjectStructure,
+                            includeAllFiles, selectedFiles, includeRelatedFiles, gitBaseRef, gitDiffHunks, previousManifest, budget,
+                            metrics);
+                    // After the manifest is saved, so the new snapshot and the ones it reads from are kept
+                    project.getService(SnapshotService.class).scheduleRetention(config);
+                } catch (IOException ex) {
+                    error = ex;
                 }
             }
-            markdown.append("\n\n");
-        }
 
-        // Add selected or all files in "# Project Files"
-        markdown.append("# Project Files\n\n");
-        for (String filePath : selectedFiles) {
-            markdown.append("- ").append(filePath).append("\n");
-        }
+            @Override
+            public void onSuccess() {
+                if (error != null) {
+                    Messages.showErrorDialog("Error creating snapshot: " + error.getMessage(), "Snapshots for AI");
+                    return;
+                }
 
-        markdown.append("\n");
+                VirtualFile virtualFile = VirtualFileManager.getInstance().findFileByNioPath(snapshotFile);
+                if (virtualFile != null) {
+                    FileEditorManager.getInstance(project).openFile(virtualFile, true);
+                }
 
-        for (String filePath : selectedFiles) {
-            markdown.append("## ").append(filePath).append("\n```\n");
-            try {
-                List<String> fileLines = Files.readAllLines(Paths.get(filePath), StandardCharsets.UTF_8);
-                for (String line : fileLines) {
-                    markdown.append(line).append("\n");
+                String message = noPreviousSnapshot
+                        ? "No previous snapshot to compare with, so a full snapshot was created."
+                        : "Snapshot created successfully!";
+                if (budget.getTruncatedFiles() > 0 || budget.getOmittedFiles() > 0) {
+                    message += "\n\nTo stay within max_tokens (" + budget.getMaxTokens() + "), " + budget.getTruncatedFiles()
+                            + " file(s) were truncated and " + budget.getOmittedFiles() + " file(s) were omitted.";
                 }
-            } catch (IOException ex) {
-                markdown.append("Error reading file: ").append(filePath).append(" - ").append(ex.getMessage()).append("\n");
-                for (StackTraceElement element : ex.getStackTrace()) {
-                    markdown.append(element.toString()).append("\n");
+                if (metrics.getRedactions() > 0) {
+                    message += "\n\n" + metrics.getRedactions() + " secret(s) were replaced with [REDACTED] placeholders.";
                 }
+                Messages.showInfoMessage(message, "Snapshots for AI");
             }
-            markdown.append("```\n\n");
-        }
-
-        try {
-            Path snapshotsDir = Paths.get(basePath, ".snapshots");
-            if (!Files.exists(snapshotsDir)) {
-                Files.createDirectories(snapshotsDir);
-            }
+        }.queue();
+    }
 
-            Path snapshotFile = snapshotsDir.resolve(fileName);
-            Files.write(snapshotFile, markdown.toString().getBytes(StandardCharsets.UTF_8));
+    private Path createSnapshot(ProgressIndicator indicator, Project project, String basePath, SnapshotConfig config, String prompt,
+                                boolean includeEntireProjectStructure, boolean includeAllFiles,
+                                List<String> selectedFiles, boolean includeRelatedFiles, String gitBaseRef, boolean gitDiffHunks,
+                                Path previousManifest, TokenBudget budget, SnapshotMetrics metrics) throws IOException {
+        FileContentReader contentReader = new FileContentReader(config.getMaxFileBytes());
+        List<String> openFiles = selectedFiles;
+
+        indicator.setIndeterminate(true);
+
+        // The file index is kept current in the background; the list feeds both the file list and the structure section
+        SnapshotService snapshotService = project.getService(SnapshotService.class);
+        // A changes-only snapshot leaves out the structure; added and removed files are listed instead
+        boolean includeStructure = includeEntireProjectStructure && previousManifest == null;
+        List<String> projectFiles = null;
+        SnapshotMetrics.Phase walkPhase = metrics.phase(SnapshotMetrics.WALK);
+        SnapshotMetrics.Phase filterPhase = metrics.phase(SnapshotMetrics.FILTER);
+        if (includeAllFiles || includeStructure) {
+            indicator.setText("Scanning project files...");
+            walkPhase.start();
+            projectFiles = snapshotService.getProjectFiles(config, indicator);
+            walkPhase.seen(projectFiles.size()).stop();
+        }
 
-            // Refresh the snapshots directory to ensure the new file is visible
-            VirtualFile snapshotsVirtualDir = VirtualFileManager.getInstance().refreshAndFindFileByNioPath(snapshotsDir);
-            if (snapshotsVirtualDir != null) {
-                snapshotsVirtualDir.refresh(false, true);
-            }
+        // If "Include all project files" is checked, use all project files not excluded by patterns
+        if (includeAllFiles) {
+            selectedFiles = projectFiles;
+        }
 
-            // Refresh and open the snapshot file in the editor
-            VirtualFile virtualFile = VirtualFileManager.getInstance().refreshAndFindFileByNioPath(snapshotFile);
-            if (virtualFile != null) {
-                virtualFile.refresh(false, false);
-                FileEditorManager.getInstance(project).openFile(virtualFile, true);
-            }
+        // Git-changed files replace the selection; the config patterns still apply to them
+        GitChanges gitChanges = null;
+        if (gitBaseRef != null) {
+            indicator.setText("Reading git status...");
+            walkPhase.start();
+            gitChanges = GitChanges.collect(Paths.get(basePath), gitBaseRef, gitDiffHunks, indicator::checkCanceled);
+            walkPhase.seen(gitChanges.getFiles().size()).stop();
+            filterPhase.start().seen(gitChanges.getFiles().size());
+            selectedFiles = SnapshotGenerator.filterByPatterns(gitChanges.getFiles(), basePath, config,
+                    snapshotService.getGitIgnore(config));
+            filterPhase.skipped("excluded by patterns", gitChanges.getFiles().size() - selectedFiles.size()).stop();
+        }
 
-            Messages.showInfoMessage("Snapshot created successfully!", "Snapshots for AI");
-        } catch (IOException ex) {
-            Messages.showErrorDialog("Error creating snapshot: " + ex.getMessage(), "Snapshots for AI");
+        // The selection is followed through imports, parents and includes; vendor stays out unless configured
+        if (includeRelatedFiles && !includeAllFiles) {
+            indicator.setText("Finding related files...");
+            walkPhase.start();
+            int selectedCount = selectedFiles.size();
+            GitIgnore gitIgnore = snapshotService.getGitIgnore(config);
+            // Related project files pass the same excluded_patterns and .gitignore filter as a walk would
+            selectedFiles = new PhpRelatedFiles(project, config.getRelatedFilesDepth(), config.isRelatedFilesIncludeVendor(),
+                    filePath -> !SnapshotGenerator.filterByPatterns(List.of(filePath), basePath, config, gitIgnore).isEmpty())
+                    .expand(selectedFiles, indicator);
+            walkPhase.seen(selectedFiles.size() - selectedCount).stop();
         }
-    }
 
-    private List<String> getAllProjectFiles(String basePath, JSONArray excludedPatterns, JSONArray includedPatterns) {
-        List<String> fileList = new ArrayList<>();
-        List<Pattern> excludePatterns = new ArrayList<>();
-        List<Pattern> includePatterns = new ArrayList<>();
+        // Filter out images and other known binary formats; anything else is sniffed when it is read
+        filterPhase.start().seen(selectedFiles.size());
+        int unfilteredCount = selectedFiles.size();
+        selectedFiles = SnapshotGenerator.filterOutBinaryFiles(selectedFiles);
+        filterPhase.skipped("binary extension", unfilteredCount - selectedFiles.size()).stop();
 
-        if (excludedPatterns != null) {
-            for (int i = 0; i < excludedPatterns.length(); i++) {
-                String patternStr = excludedPatterns.getString(i);
-                patternStr = Pattern.quote(patternStr).replace("*", "\\E.*\\Q");
-                excludePatterns.add(Pattern.compile("^" + Pattern.quote(basePath.replace("\\", "/")) + "(/.*)?/\\.?" + patternStr + ".*$"));
-            }
+        // With a token budget, files open in the editor are written first so they are the last to be cut
+        if (budget.isLimited()) {
+            selectedFiles = rankOpenFilesFirst(selectedFiles, openFiles);
         }
 
-        if (includedPatterns != null) {
-            for (int i = 0; i < includedPatterns.length(); i++) {
-                String patternStr = includedPatterns.getString(i);
-                patternStr = patternStr.replace(".", "\\.").replace("*", ".*");
-                includePatterns.add(Pattern.compile(".*/" + patternStr + "$"));
-            }
-        }
+        String fileName = SnapshotGenerator.fileName(LocalDateTime.now());
 
-        try {
-            Files.walk(Paths.get(basePath))
-                .filter(Files::isRegularFile)
-                .forEach(path -> {
-                    String filePath = path.toString().replace('\\', '/');
-                    boolean excluded = isExcluded(filePath, excludePatterns);
-                    boolean included = isIncluded(filePath, includePatterns);
-                    boolean inExcludedDir = isInExcludedDirectory(filePath, excludePatterns);
-
-                    if (included && !inExcludedDir) {
-                        fileList.add(filePath);
-                    } else if (!excluded && !inExcludedDir) {
-                        fileList.add(filePath);
-                    }
-                });
-        } catch (IOException e) {
-            e.printStackTrace();
+        Path snapshotsDir = Paths.get(basePath, ".snapshots");
+        if (!Files.exists(snapshotsDir)) {
+            Files.createDirectories(snapshotsDir);
         }
-        return fileList;
-    }
 
-    private boolean isExcluded(String filePath, List<Pattern> excludePatterns) {
-        for (Pattern pattern : excludePatterns) {
-            if (pattern.matcher(filePath).matches()) {
-                return true;
-            }
+        RenderCache renderCache = snapshotService.getRenderCache(config);
+        // Open editors are taken from memory, including unsaved changes
+        FileContentSource contentSource = new EditorContentSource();
+        String previousSnapshot = null;
+        SnapshotManifest previous = null;
+        SnapshotDelta delta = null;
+        if (previousManifest != null) {
+            indicator.setText("Comparing with the previous snapshot...");
+            String manifestName = previousManifest.getFileName().toString();
+            previousSnapshot = manifestName.substring(0, manifestName.length() - ".tsv".length()) + ".md";
+            previous = SnapshotManifest.load(previousManifest);
+            // Files whose size or modification time changed are hashed, so this counts as reading
+            metrics.phase(SnapshotMetrics.READ).start();
+            delta = SnapshotDelta.compute(previous, selectedFiles, contentReader, renderCache, contentSource,
+                    indicator::checkCanceled);
+            metrics.phase(SnapshotMetrics.READ).stop();
         }
-        return false;
-    }
 
-    private boolean isIncluded(String filePath, List<Pattern> includePatterns) {
-        if (includePatterns.isEmpty()) {
-            return true; // If no include patterns, consider all files included
-        }
-        for (Pattern pattern : includePatterns) {
-            if (pattern.matcher(filePath).matches()) {
-                return true;
+        SnapshotGenerator generator = new SnapshotGenerator(config, contentReader, renderCache, budget,
+                toProgress(indicator), metrics);
+
+        // Stream every section straight to the snapshot file instead of building it in memory first
+        Path snapshotFile = snapshotsDir.resolve(fileName);
+        SnapshotManifest manifest;
+        long estimatedTokens;
+        try (SnapshotWriter writer = new SnapshotWriter(snapshotFile, contentReader, config.getRedactor())) {
+            writer.append(prompt).append("\n\n");
+
+            if (delta != null) {
+                manifest = generator.writeChanges(writer, basePath, delta, previous, previousSnapshot, snapshotsDir, contentSource, fileName);
+            } else {
+                BodyRenderer outlineRenderer = config.isPhpOutline()
+                        ? new PhpOutlineRenderer(project, config.isPhpOutlineUnopenedOnly() ? new HashSet<>(openFiles) : Set.of())
+                        : null;
+                manifest = generator.write(writer, basePath, includeStructure ? projectFiles : null, selectedFiles,
+                        gitDiffHunks ? gitChanges : null, outlineRenderer, contentSource, fileName);
             }
-        }
-        return false;
-    }
-
-    private boolean isInExcludedDirectory(String filePath, List<Pattern> excludePatterns) {
-        Path path = Paths.get(filePath).getParent();
-        while (path != null) {
-            if (isExcluded(path.toString().replace('\\', '/'), excludePatterns)) {
-                return true;
+            metrics.setRedactions(writer.getRedactions());
+            if (config.isStatsFooter()) {
+                writer.append("\n");
+                metrics.writeFooter(writer);
             }
-            path = path.getParent();
+            estimatedTokens = writer.getEstimatedTokens();
+        } catch (ProcessCanceledException | IOException ex) {
+            // Don't leave a half-written snapshot behind
+            Files.deleteIfExists(snapshotFile);
+            throw ex;
         }
-        return false;
-    }
 
-    private List<String> filterOutImageFiles(List<String> filePaths) {
-        List<String> filteredFiles = new ArrayList<>();
-        for (String filePath : filePaths) {
-            if (!filePath.matches(".*\\.(jpg|jpeg|png|gif|bmp|tiff)$") || filePath.endsWith(".svg")) {
-                filteredFiles.add(filePath);
+        if (config.isMetricsLog()) {
+            String mode = delta != null ? "changes" : gitBaseRef != null ? "git" : "full";
+            try {
+                metrics.appendTo(snapshotsDir.resolve("metrics.jsonl"), fileName, mode, getPluginVersion(), estimatedTokens);
+            } catch (IOException ex) {
+                LOG.warn("Snapshot metrics could not be written", ex);
             }
         }
-        return filteredFiles;
+        return finishSnapshot(snapshotsDir, snapshotFile, manifest);
     }
 
-    private String formatProjectStructure(String basePath, List<String> filePaths) {
-        StringBuilder structure = new StringBuilder();
-        Path base = Paths.get(basePath);
-
+    private Path finishSnapshot(Path snapshotsDir, Path snapshotFile, SnapshotManifest manifest) {
         try {
-            // First, create a tree structure for all the files
-            DirectoryNode root = new DirectoryNode(base.toString());
-            for (String filePath : filePaths) {
-                Path relativePath = base.relativize(Paths.get(filePath));
-                addPathToTree(root, relativePath);
-            }
-
-            // Then, convert the tree to a formatted string
-            buildStructureString(structure, root, 0);
-        } catch (Exception e) {
-            structure.append("Exception occurred while building project structure: ").append(e.getMessage()).append("\n");
-            for (StackTraceElement element : e.getStackTrace()) {
-                structure.append(element.toString()).append("\n");
-            }
-        }
-
-        return structure.toString();
-    }
-
-    private void addPathToTree(DirectoryNode currentNode, Path relativePath) throws Exception {
-        if (relativePath.getNameCount() == 0) return;
-
-        String part = relativePath.getName(0).toString();
-        DirectoryNode childNode = currentNode.getChild(part);
-        if (childNode == null) {
-            childNode = new DirectoryNode(part);
-            currentNode.addChild(childNode);
+            manifest.save(SnapshotManifest.pathFor(snapshotFile));
+        } catch (IOException ex) {
+            LOG.warn("Snapshot manifest could not be written", ex);
         }
 
-        if (relativePath.getNameCount() > 1) {
-            addPathToTree(childNode, relativePath.subpath(1, relativePath.getNameCount()));
+        // Refresh the snapshots directory so the new file is visible before it is opened on the EDT
+        VirtualFile snapshotsVirtualDir = VirtualFileManager.getInstance().refreshAndFindFileByNioPath(snapshotsDir);
+        if (snapshotsVirtualDir != null) {
+            snapshotsVirtualDir.refresh(false, true);
         }
-    }
-
-    private void buildStructureString(StringBuilder structure, DirectoryNode node, int level) {
-        if (level > 0) {
-            structure.append("    ".repeat(level - 1))
-                     .append(node.isDirectory() ? "+ " : "- ")
-                     .append(node.getName())
-                     .append("\n");
+        VirtualFile virtualFile = VirtualFileManager.getInstance().refreshAndFindFileByNioPath(snapshotFile);
+        if (virtualFile != null) {
+            virtualFile.refresh(false, false);
         }
 
-        for (DirectoryNode child : node.getChildren()) {
-            buildStructureString(structure, child, level + 1);
-        }
+        return snapshotFile;
     }
 
-    private class DirectoryNode {
-        private final String name;
-        private final List<DirectoryNode> children;
-
-        public DirectoryNode(String name) {
-            this.name = name;
-            this.children = new ArrayList<>();
+    private List<String> rankOpenFilesFirst(List<String> filePaths, List<String> openFiles) {
+        Set<String> remaining = new LinkedHashSet<>(filePaths);
+        List<String> ranked = new ArrayList<>(filePaths.size());
+        for (String filePath : openFiles) {
+            if (remaining.remove(filePath)) {
+                ranked.add(filePath);
+            }
         }
+        ranked.addAll(remaining);
+        return ranked;
+    }
 
-        public String getName() {
-            return name;
-        }
+    private static String getPluginVersion() {
+        IdeaPluginDescriptor plugin = PluginManagerCore.getPlugin(PluginId.getId(PLUGIN_ID));
+        return plugin == null ? "unknown" : plugin.getVersion();
+    }
 
-        public boolean isDirectory() {
-            return !children.isEmpty();
-        }
+    private static SnapshotGenerator.Progress toProgress(ProgressIndicator indicator) {
+        return new SnapshotGenerator.Progress() {
+            @Override
+            public void checkCanceled() {
+                indicator.checkCanceled();
+            }
 
-        public List<DirectoryNode> getChildren() {
-            return children;
-        }
+            @Override
+            public void setText(String text) {
+                indicator.setText(text);
+            }
 
-        public void addChild(DirectoryNode child) {
-            children.add(child);
-        }
+            @Override
+            public void setText2(String text) {
+                indicator.setText2(text);
+            }
 
-        public DirectoryNode getChild(String name) {
-            for (DirectoryNode child : children) {
-                if (child.getName().equals(name)) {
-                    return child;
-                }
+            @Override
+            public void setFraction(double fraction) {
+                indicator.setIndeterminate(false);
+                indicator.setFraction(fraction);
             }
-            return null;
-        }
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,350 @@
+package com.gbti.snapshotsforai.cli;
+
+import com.gbti.snapshotsforai.core.DefaultConfig;
+import com.gbti.snapshotsforai.core.FileContentReader;
+import com.gbti.snapshotsforai.core.GitChanges;
+import com.gbti.snapshotsforai.core.GitIgnore;
+import com.gbti.snapshotsforai.core.ProjectFileWalker;
+import com.gbti.snapshotsforai.core.RenderCache;
+import com.gbti.snapshotsforai.core.SnapshotConfig;
+import com.gbti.snapshotsforai.core.SnapshotDelta;
+import com.gbti.snapshotsforai.core.SnapshotGenerator;
+import com.gbti.snapshotsforai.core.SnapshotManifest;
+import com.gbti.snapshotsforai.core.SnapshotMetrics;
+import com.gbti.snapshotsforai.core.SnapshotWriter;
+import com.gbti.snapshotsforai.core.TokenBudget;
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes snapshots for one or more project roots without the IDE, for CI and batch runs. Each root
+ * uses its own {@code .snapshots/config.json} (or the defaults if there is none) and gets the same
+ * snapshot the "Create Snapshot" action writes when the dialog is left at the config defaults.
+ * <p>
+ * Options that need the IDE fall back: PHP outlines are written as full contents, "Add related files"
+ * is not available, and files are listed by walking the disk as with {@code file_enumeration: filesystem}.
+ */
+public final class SnapshotCli {
+    private static final String USAGE = String.join("\n",
+            "Usage: snapshots-for-ai [options] <project root>...",
+            "",
+            "Options:",
+            "  --workers <n>           Project roots processed in parallel (default: number of CPUs)",
+            "  --prompt <text>         Text at the top of the snapshot (default: default_prompt)",
+            "  --config <file>         Use this config.json for every root instead of <root>/.snapshots/config.json",
+            "  --all-files             Include all project files (default: default_include_all_files)",
+            "  --no-all-files          Don't include all project files",
+            "  --structure             Include the project structure (default: default_include_entire_project_structure)",
+            "  --no-structure          Leave out the project structure",
+            "  --git-since <ref>       Only files changed in git since this branch, tag or commit",
+            "  --diff-hunks            With --git-since, write tracked files as diff hunks (default: default_git_diff_hunks)",
+            "  --no-diff-hunks         With --git-since, write the full contents of changed files",
+            "  --changes               Only changes since the last snapshot of each root",
+            "  --help                  Show this help");
+
+    private SnapshotCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    // 0 if every root got a snapshot, 1 if any failed, 2 for invalid arguments
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException ex) {
+            err.println(ex.getMessage());
+            err.println();
+            err.println(USAGE);
+            return 2;
+        }
+        if (options.help) {
+            out.println(USAGE);
+            return 0;
+        }
+
+        // Each snapshot also reads its files on read_concurrency threads of its own
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(options.workers, options.roots.size()));
+        List<Future<Result>> results = new ArrayList<>();
+        for (Path root : options.roots) {
+            results.add(executor.submit(() -> createSnapshot(root, options)));
+        }
+        executor.shutdown();
+
+        // Reported in argument order, so the output is the same however the roots were scheduled
+        int failed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Path root = options.roots.get(i);
+            try {
+                Result result = results.get(i).get();
+                for (String warning : result.warnings) {
+                    err.println(root + ": " + warning);
+                }
+                out.println(root + ": " + result.snapshotFile + " (" + result.files + " files, ~"
+                        + result.estimatedTokens + " tokens, " + result.millis + " ms)");
+            } catch (ExecutionException ex) {
+                failed++;
+                Throwable cause = ex.getCause();
+                err.println(root + ": " + (cause.getMessage() != null ? cause.getMessage() : cause.toString()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                return 1;
+            }
+        }
+        return failed == 0 ? 0 : 1;
+    }
+
+    // Follows CreateSnapshotAction.createSnapshot step by step so both write the same bytes
+    private static Result createSnapshot(Path root, Options options) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Not a directory: " + root);
+        }
+        // Symlinks resolved like the IDE's project paths, so both write the same file paths
+        root = root.toRealPath();
+        Result result = new Result();
+        SnapshotMetrics metrics = new SnapshotMetrics();
+        long configStart = System.nanoTime();
+        Path snapshotsDir = root.resolve(".snapshots");
+        SnapshotConfig config = loadConfig(options.config != null ? options.config : snapshotsDir.resolve("config.json"));
+        metrics.phase(SnapshotMetrics.CONFIG).add(System.nanoTime() - configStart);
+        if (config.isPhpOutline()) {
+            result.warnings.add("php_outline needs the IDE's PHP index; PHP files are written in full");
+        }
+
+        String basePath = root.toString().replace('\\', '/');
+        String prompt = options.prompt != null ? options.prompt : config.getDefaultPrompt();
+        boolean includeAllFiles = options.allFiles != null ? options.allFiles : config.isDefaultIncludeAllFiles();
+        boolean includeEntireProjectStructure = options.structure != null
+                ? options.structure : config.isDefaultIncludeEntireProjectStructure();
+        boolean gitDiffHunks = options.diffHunks != null ? options.diffHunks : config.isDefaultGitDiffHunks();
+        FileContentReader contentReader = new FileContentReader(config.getMaxFileBytes());
+        TokenBudget budget = new TokenBudget(config.getMaxTokens());
+
+        Path previousManifest = options.changes ? SnapshotManifest.findLatest(snapshotsDir) : null;
+        if (options.changes && previousManifest == null) {
+            result.warnings.add("No previous snapshot to compare with, so a full snapshot was created");
+        }
+        boolean includeStructure = includeEntireProjectStructure && previousManifest == null;
+        GitIgnore gitIgnore = config.isRespectGitignore() ? GitIgnore.load(root, config.isRespectGitInfoExclude()) : null;
+
+        List<String> selectedFiles = new ArrayList<>();
+        List<String> projectFiles = null;
+        SnapshotMetrics.Phase walkPhase = metrics.phase(SnapshotMetrics.WALK);
+        SnapshotMetrics.Phase filterPhase = metrics.phase(SnapshotMetrics.FILTER);
+        if (includeAllFiles || includeStructure) {
+            walkPhase.start();
+            projectFiles = new ProjectFileWalker(config.getMatcher(), gitIgnore).walk(root, () -> {
+            });
+            // The IDE's file index keeps its paths sorted
+            Collections.sort(projectFiles);
+            walkPhase.seen(projectFiles.size()).stop();
+        }
+        if (includeAllFiles) {
+            selectedFiles = projectFiles;
+        }
+
+        GitChanges gitChanges = null;
+        if (options.gitBaseRef != null) {
+            walkPhase.start();
+            gitChanges = GitChanges.collect(root, options.gitBaseRef, gitDiffHunks, () -> {
+            });
+            walkPhase.seen(gitChanges.getFiles().size()).stop();
+            filterPhase.start().seen(gitChanges.getFiles().size());
+            selectedFiles = SnapshotGenerator.filterByPatterns(gitChanges.getFiles(), basePath, config, gitIgnore);
+            filterPhase.skipped("excluded by patterns", gitChanges.getFiles().size() - selectedFiles.size()).stop();
+        }
+
+        filterPhase.start().seen(selectedFiles.size());
+        int unfilteredCount = selectedFiles.size();
+        selectedFiles = SnapshotGenerator.filterOutBinaryFiles(selectedFiles);
+        filterPhase.skipped("binary extension", unfilteredCount - selectedFiles.size()).stop();
+
+        Files.createDirectories(snapshotsDir);
+        String fileName = SnapshotGenerator.fileName(LocalDateTime.now());
+        // Nothing is kept in memory between runs of the command
+        RenderCache renderCache = new RenderCache(0);
+        String previousSnapshot = null;
+        SnapshotManifest previous = null;
+        SnapshotDelta delta = null;
+        if (previousManifest != null) {
+            String manifestName = previousManifest.getFileName().toString();
+            previousSnapshot = manifestName.substring(0, manifestName.length() - ".tsv".length()) + ".md";
+            previous = SnapshotManifest.load(previousManifest);
+            metrics.phase(SnapshotMetrics.READ).start();
+            delta = SnapshotDelta.compute(previous, selectedFiles, contentReader, renderCache, null, () -> {
+            });
+            metrics.phase(SnapshotMetrics.READ).stop();
+        }
+
+        SnapshotGenerator generator = new SnapshotGenerator(config, contentReader, renderCache, budget,
+                SnapshotGenerator.Progress.NONE, metrics);
+        Path snapshotFile = snapshotsDir.resolve(fileName);
+        SnapshotManifest manifest;
+        try (SnapshotWriter writer = new SnapshotWriter(snapshotFile, contentReader, config.getRedactor())) {
+            writer.append(prompt).append("\n\n");
+            if (delta != null) {
+                manifest = generator.writeChanges(writer, basePath, delta, previous, previousSnapshot, snapshotsDir, null, fileName);
+            } else {
+                manifest = generator.write(writer, basePath, includeStructure ? projectFiles : null, selectedFiles,
+                        gitDiffHunks ? gitChanges : null, null, null, fileName);
+            }
+            metrics.setRedactions(writer.getRedactions());
+            if (config.isStatsFooter()) {
+                writer.append("\n");
+                metrics.writeFooter(writer);
+            }
+            result.estimatedTokens = writer.getEstimatedTokens();
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(snapshotFile);
+            throw ex;
+        }
+
+        if (config.isMetricsLog()) {
+            String mode = delta != null ? "changes" : options.gitBaseRef != null ? "git" : "full";
+            try {
+                metrics.appendTo(snapshotsDir.resolve("metrics.jsonl"), fileName, mode, getVersion(), result.estimatedTokens);
+            } catch (IOException ex) {
+                result.warnings.add("Snapshot metrics could not be written: " + ex.getMessage());
+            }
+        }
+        try {
+            manifest.save(SnapshotManifest.pathFor(snapshotFile));
+        } catch (IOException ex) {
+            result.warnings.add("Snapshot manifest could not be written: " + ex.getMessage());
+        }
+
+        // The snapshot is complete at this point; a failed cleanup doesn't fail the run
+        try {
+            config.getRetention().apply(snapshotsDir, () -> {
+            });
+        } catch (IOException ex) {
+            result.warnings.add("Old snapshots could not be archived: " + ex.getMessage());
+        }
+
+        result.snapshotFile = snapshotFile;
+        result.files = delta != null ? delta.getAdded().size() + delta.getModified().size() : selectedFiles.size();
+        result.millis = metrics.getElapsedMillis();
+        return result;
+    }
+
+    // A root without .snapshots/config.json gets the config the plugin would create for it
+    private static SnapshotConfig loadConfig(Path configFile) throws IOException {
+        String content = Files.exists(configFile) ? Files.readString(configFile) : DefaultConfig.create().toString(4);
+        try {
+            return SnapshotConfig.parse(content);
+        } catch (JSONException ex) {
+            throw new IOException("Invalid config.json: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static String getVersion() {
+        String version = SnapshotCli.class.getPackage().getImplementationVersion();
+        return version == null ? "unknown" : version;
+    }
+
+    private static final class Result {
+        final List<String> warnings = new ArrayList<>();
+        Path snapshotFile;
+        int files;
+        long estimatedTokens;
+        long millis;
+    }
+
+    private static final class Options {
+        final List<Path> roots = new ArrayList<>();
+        int workers = Runtime.getRuntime().availableProcessors();
+        String prompt;
+        Path config;
+        Boolean allFiles;
+        Boolean structure;
+        String gitBaseRef;
+        Boolean diffHunks;
+        boolean changes;
+        boolean help;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--workers":
+                        try {
+                            options.workers = Integer.parseInt(value(args, ++i, arg));
+                        } catch (NumberFormatException ex) {
+                            throw new IllegalArgumentException("--workers expects a number");
+                        }
+                        if (options.workers < 1) {
+                            throw new IllegalArgumentException("--workers must be at least 1");
+                        }
+                        break;
+                    case "--prompt":
+                        options.prompt = value(args, ++i, arg);
+                        break;
+                    case "--config":
+                        options.config = Paths.get(value(args, ++i, arg)).toAbsolutePath();
+                        break;
+                    case "--all-files":
+                        options.allFiles = true;
+                        break;
+                    case "--no-all-files":
+                        options.allFiles = false;
+                        break;
+                    case "--structure":
+                        options.structure = true;
+                        break;
+                    case "--no-structure":
+                        options.structure = false;
+                        break;
+                    case "--git-since":
+                        options.gitBaseRef = value(args, ++i, arg);
+                        break;
+                    case "--diff-hunks":
+                        options.diffHunks = true;
+                        break;
+                    case "--no-diff-hunks":
+                        options.diffHunks = false;
+                        break;
+                    case "--changes":
+                        options.changes = true;
+                        break;
+                    case "--help":
+                    case "-h":
+                        options.help = true;
+                        break;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        }
+                        options.roots.add(Paths.get(arg).toAbsolutePath().normalize());
+                }
+            }
+            if (options.roots.isEmpty() && !options.help) {
+                throw new IllegalArgumentException("No project root given");
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException(option + " expects a value");
+            }
+            return args[index];
+        }
+    }
+}
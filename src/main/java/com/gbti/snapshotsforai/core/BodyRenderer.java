@@ -0,0 +1,20 @@
+package com.gbti.snapshotsforai.core;
+
+/**
+ * Produces an alternative body for a file, such as an outline, in place of its contents.
+ */
+public interface BodyRenderer {
+    /**
+     * Whether {@link #render} may handle the file. Called for every selected file before anything is
+     * written, so it must be cheap; files it accepts are not read ahead from disk.
+     */
+    default boolean accepts(String filePath) {
+        return true;
+    }
+
+    /**
+     * Returns the body to write for the file, or null to write its contents as usual.
+     * Called just before the file is written.
+     */
+    FileBody render(String filePath);
+}
@@ -0,0 +1,134 @@
+package com.gbti.snapshotsforai.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * The config.json written into a project's .snapshots directory when none exists yet.
+ */
+public final class DefaultConfig {
+    public static final List<String> EXCLUDED_PATTERNS = List.of(
+            ".git",
+            ".gitignore",
+            "gradle",
+            "gradlew",
+            "gradlew.*",
+            "node_modules",
+            "vendor",
+            ".snapshots",
+            ".idea",
+            ".vscode",
+            "*.log",
+            "*.tmp",
+            "target",
+            "dist",
+            "build",
+            ".DS_Store",
+            "*.bak",
+            "*.swp",
+            "*.swo",
+            "*.lock",
+            "*.iml",
+            "coverage",
+            "*.min.js",
+            "*.min.css",
+            "netlify.toml",
+            "package-lock.json",
+            "__pycache__",
+            "LICENSE"
+    );
+
+    public static final List<String> INCLUDED_PATTERNS = List.of(
+            "build.gradle",
+            "settings.gradle",
+            "gradle.properties",
+            "pom.xml",
+            "Makefile",
+            "CMakeLists.txt",
+            "package.json",
+            "yarn.lock",
+            "requirements.txt",
+            "Pipfile",
+            "Pipfile.lock",
+            "Gemfile",
+            "Gemfile.lock",
+            "composer.json",
+            "composer.lock",
+            ".editorconfig",
+            ".eslintrc.json",
+            ".eslintrc.js",
+            ".prettierrc",
+            ".babelrc",
+            ".env",
+            ".dockerignore",
+            ".gitattributes",
+            ".stylelintrc",
+            ".npmrc"
+    );
+
+    public static final String FILE_ENUMERATION = "index";
+    public static final int READ_CONCURRENCY = 8;
+    public static final int READ_BUFFER_MB = 32;
+    public static final int MAX_FILE_SIZE_KB = 1024;
+    public static final String STRUCTURE_MODE = "full";
+    public static final int STRUCTURE_MAX_ENTRIES = 200;
+    public static final int RENDER_CACHE_MB = 64;
+    public static final String DELTA_FORMAT = "diff";
+    public static final String GIT_BASE_REF = "HEAD";
+    public static final int MAX_TOKENS = 0;
+    public static final String PHP_OUTLINE = "off";
+    public static final int RELATED_FILES_DEPTH = 1;
+    public static final boolean RESPECT_GITIGNORE = false;
+    public static final boolean RESPECT_GIT_INFO_EXCLUDE = true;
+    public static final boolean REDACT_SECRETS = true;
+    public static final boolean STATS_FOOTER = false;
+    public static final boolean METRICS_LOG = true;
+    public static final int RETENTION_KEEP_SNAPSHOTS = 20;
+    public static final int RETENTION_MAX_AGE_DAYS = 30;
+    public static final int RETENTION_MAX_TOTAL_MB = 512;
+    public static final boolean RETENTION_ARCHIVE = true;
+
+    private DefaultConfig() {
+    }
+
+    public static JSONObject create() {
+        JSONObject config = new JSONObject();
+        config.put("excluded_patterns", new JSONArray(EXCLUDED_PATTERNS));
+        config.put("included_patterns", new JSONArray(INCLUDED_PATTERNS));
+        config.put("respect_gitignore", RESPECT_GITIGNORE);
+        config.put("respect_git_info_exclude", RESPECT_GIT_INFO_EXCLUDE);
+        config.put("file_enumeration", FILE_ENUMERATION);
+        config.put("read_concurrency", READ_CONCURRENCY);
+        config.put("read_buffer_mb", READ_BUFFER_MB);
+        config.put("max_file_size_kb", MAX_FILE_SIZE_KB);
+        config.put("structure_mode", STRUCTURE_MODE);
+        config.put("structure_max_entries", STRUCTURE_MAX_ENTRIES);
+        config.put("render_cache_mb", RENDER_CACHE_MB);
+        config.put("delta_format", DELTA_FORMAT);
+        config.put("max_tokens", MAX_TOKENS);
+        config.put("php_outline", PHP_OUTLINE);
+        config.put("related_files_depth", RELATED_FILES_DEPTH);
+        config.put("related_files_include_vendor", false);
+        config.put("redact_secrets", REDACT_SECRETS);
+        config.put("redaction_patterns", new JSONArray());
+        config.put("stats_footer", STATS_FOOTER);
+        config.put("metrics_log", METRICS_LOG);
+        config.put("retention_keep_snapshots", RETENTION_KEEP_SNAPSHOTS);
+        config.put("retention_max_age_days", RETENTION_MAX_AGE_DAYS);
+        config.put("retention_max_total_mb", RETENTION_MAX_TOTAL_MB);
+        config.put("retention_archive", RETENTION_ARCHIVE);
+
+        JSONObject defaultConfig = new JSONObject();
+        defaultConfig.put("default_prompt", "Enter your prompt here");
+        defaultConfig.put("default_include_entire_project_structure", true);
+        defaultConfig.put("default_include_all_files", false);
+        defaultConfig.put("default_git_base_ref", GIT_BASE_REF);
+        defaultConfig.put("default_git_diff_hunks", false);
+        defaultConfig.put("default_include_related_files", false);
+
+        config.put("default", defaultConfig);
+        return config;
+    }
+}
@@ -0,0 +1,50 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+
+/**
+ * The outcome of reading one file ahead of time: its normalized text, the error that
+ * prevented reading it, or a marker that it should be streamed from disk when its turn comes.
+ */
+public final class FileBody {
+    private static final FileBody DEFERRED = new FileBody(null, null, null);
+
+    private final String text;
+    private final String hash;
+    private final IOException error;
+
+    private FileBody(String text, String hash, IOException error) {
+        this.text = text;
+        this.hash = hash;
+        this.error = error;
+    }
+
+    public static FileBody text(String text, String hash) {
+        return new FileBody(text, hash, null);
+    }
+
+    public static FileBody failed(IOException error) {
+        return new FileBody(null, null, error);
+    }
+
+    public static FileBody deferred() {
+        return DEFERRED;
+    }
+
+    public boolean isDeferred() {
+        return this == DEFERRED;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    // SHA-1 of the file's bytes, or null if the file wasn't read completely
+    public String getHash() {
+        return hash;
+    }
+
+    public IOException getError() {
+        return error;
+    }
+}
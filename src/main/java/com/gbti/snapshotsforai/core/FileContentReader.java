@@ -0,0 +1,221 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decodes a file body in fixed-size chunks. The first chunk doubles as a sniffing prefix: binary
+ * content is replaced by a one-line placeholder, and text beyond {@code maxFileBytes} is cut off
+ * with a marker, so no file is ever decoded into memory as a whole.
+ */
+public final class FileContentReader {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    static final String BINARY_PLACEHOLDER = "Binary file omitted (";
+
+    // Known binary formats are dropped from the file list without opening them
+    private static final Set<String> BINARY_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "bmp", "tiff", "ico", "webp",
+            "phar", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "tar", "jar", "war",
+            "sqlite", "sqlite3", "db", "pdf",
+            "ttf", "otf", "woff", "woff2", "eot",
+            "mp3", "mp4", "mov", "avi", "wav", "ogg", "webm",
+            "exe", "dll", "so", "dylib", "class", "pyc", "o", "a", "bin"
+    );
+
+    private final long maxFileBytes;
+
+    // maxFileBytes <= 0 disables truncation
+    public FileContentReader(long maxFileBytes) {
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    public static boolean hasBinaryExtension(String filePath) {
+        int dot = filePath.lastIndexOf('.');
+        if (dot < 0 || dot < filePath.lastIndexOf('/')) {
+            return false;
+        }
+        return BINARY_EXTENSIONS.contains(filePath.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    // Number of bytes of the file that will actually be decoded
+    public long readableSize(long size) {
+        return maxFileBytes > 0 ? Math.min(size, maxFileBytes) : size;
+    }
+
+    public FileBody read(Path file) {
+        StringWriter text = new StringWriter();
+        try {
+            String hash = transfer(file, text);
+            return FileBody.text(text.toString(), hash);
+        } catch (IOException ex) {
+            return FileBody.failed(ex);
+        }
+    }
+
+    /**
+     * Writes the decoded body to {@code out} and returns the hex SHA-1 of the file's bytes,
+     * or null if the file was binary or truncated and therefore not read completely.
+     */
+    public String transfer(Path file, Writer out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return transfer(channel, channel.size(), out);
+        }
+    }
+
+    /**
+     * Decodes content that is already in memory, such as the IDE's cached copy of a file, exactly
+     * as if it had been read from disk, including the hash.
+     */
+    public FileBody decode(byte[] content) {
+        StringWriter text = new StringWriter();
+        try {
+            String hash = transfer(Channels.newChannel(new ByteArrayInputStream(content)), content.length, text);
+            return FileBody.text(text.toString(), hash);
+        } catch (IOException ex) {
+            return FileBody.failed(ex);
+        }
+    }
+
+    private String transfer(ReadableByteChannel channel, long size, Writer out) throws IOException {
+        MessageDigest digest = newDigest();
+        long limit = readableSize(size);
+        boolean truncated = limit < size;
+
+        ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, Math.max(limit, 1)));
+        long first = fill(channel, bytes, limit, digest);
+        long remaining = first < 0 ? 0 : limit - first;
+        bytes.flip();
+
+        if (isBinary(bytes)) {
+            out.write(BINARY_PLACEHOLDER + size + " bytes)\n");
+            return null;
+        }
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(bytes.capacity());
+        LineNormalizingWriter normalized = new LineNormalizingWriter(out);
+
+        while (true) {
+            boolean endOfInput = remaining <= 0;
+            // A cut-off multi-byte sequence at the truncation point is dropped rather than replaced
+            CoderResult result = decoder.decode(bytes, chars, endOfInput && !truncated);
+            drain(chars, normalized);
+            if (result.isOverflow()) {
+                continue;
+            }
+            if (endOfInput) {
+                break;
+            }
+            bytes.compact();
+            long read = fill(channel, bytes, remaining, digest);
+            remaining = read < 0 ? 0 : remaining - read;
+            bytes.flip();
+        }
+        if (!truncated) {
+            decoder.flush(chars);
+            drain(chars, normalized);
+        }
+        normalized.finish();
+
+        if (truncated) {
+            out.write("... truncated: showing the first " + limit + " of " + size + " bytes\n");
+            return null;
+        }
+        return toHex(digest.digest());
+    }
+
+    // Reads until the buffer is full or `remaining` bytes were read; returns -1 on a premature end of file
+    private static long fill(ReadableByteChannel channel, ByteBuffer buffer, long remaining, MessageDigest digest) throws IOException {
+        long total = 0;
+        while (buffer.hasRemaining() && total < remaining) {
+            int limit = buffer.limit();
+            int start = buffer.position();
+            if (buffer.remaining() > remaining - total) {
+                buffer.limit(start + (int) (remaining - total));
+            }
+            int read = channel.read(buffer);
+            buffer.limit(limit);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            digest.update(buffer.array(), buffer.arrayOffset() + start, read);
+            total += read;
+        }
+        return total;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void drain(CharBuffer chars, Writer out) throws IOException {
+        chars.flip();
+        out.write(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        chars.clear();
+    }
+
+    // A NUL byte, a well-known binary signature or a high share of control characters in the prefix
+    static boolean isBinary(ByteBuffer prefix) {
+        int start = prefix.position();
+        int length = prefix.remaining();
+        if (startsWith(prefix, "%PDF-") || startsWith(prefix, "PK\u0003\u0004") || startsWith(prefix, "\u001f\u008b")
+                || startsWith(prefix, "wOFF") || startsWith(prefix, "wOF2") || startsWith(prefix, "OTTO")) {
+            return true;
+        }
+
+        int suspicious = 0;
+        for (int i = 0; i < length; i++) {
+            int b = prefix.get(start + i) & 0xff;
+            if (b == 0) {
+                return true;
+            }
+            if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != '\b' && b != 0x1b) || b == 0x7f) {
+                suspicious++;
+            }
+        }
+        return length > 0 && suspicious * 10 > length;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, String signature) {
+        if (buffer.remaining() < signature.length()) {
+            return false;
+        }
+        for (int i = 0; i < signature.length(); i++) {
+            if ((buffer.get(buffer.position() + i) & 0xff) != signature.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
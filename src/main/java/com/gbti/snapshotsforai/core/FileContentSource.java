@@ -0,0 +1,22 @@
+package com.gbti.snapshotsforai.core;
+
+/**
+ * Supplies a file's current contents from memory, such as the text of an open editor, so they
+ * don't have to be read from disk and unsaved changes are included.
+ */
+public interface FileContentSource {
+    /**
+     * Whether {@link #read} will serve the file from memory. Only looks the file up and decodes
+     * nothing, so it can be asked for every selected file before any of them is written.
+     */
+    boolean holds(String filePath);
+
+    // Whether the contents in memory differ from the file on disk, checked without decoding them
+    boolean hasUnsavedChanges(String filePath);
+
+    /**
+     * Returns the file's contents, or null to read it from disk. A body without a hash is either
+     * unsaved or couldn't be matched byte for byte against the file on disk.
+     */
+    FileBody read(String filePath, FileContentReader contentReader);
+}
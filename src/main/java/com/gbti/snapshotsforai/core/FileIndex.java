@@ -0,0 +1,248 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The set of files eligible for "include all project files", with size and modification time.
+ * Persisted as a tab-separated file under .snapshots so the next session can start from it
+ * instead of walking the project.
+ * <p>
+ * The fingerprint identifies the config and project the index was built for; an index whose
+ * fingerprint doesn't match the current one must be rebuilt.
+ * <p>
+ * A running total of the bytes a snapshot would read is kept as entries change, so the estimate
+ * for "include all project files" doesn't add up every entry: binary files count as nothing and
+ * larger files only up to {@code max_file_size_kb}.
+ */
+public final class FileIndex {
+    public static final String FILE_NAME = "file-index.tsv";
+    private static final String HEADER = "# snapshots-for-ai file index v2 ";
+
+    private final String fingerprint;
+    private final long maxFileBytes;
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong textBytes = new AtomicLong();
+    private final AtomicLong phpBytes = new AtomicLong();
+
+    // maxFileBytes <= 0 counts files in full, like FileContentReader
+    public FileIndex(String fingerprint, long maxFileBytes) {
+        this.fingerprint = fingerprint;
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    // Stats every path; files that vanished since they were listed are left out
+    public static FileIndex build(String fingerprint, long maxFileBytes, List<String> filePaths, Runnable checkCanceled) {
+        FileIndex index = new FileIndex(fingerprint, maxFileBytes);
+        for (String filePath : filePaths) {
+            checkCanceled.run();
+            Entry entry = stat(filePath);
+            if (entry != null) {
+                index.put(filePath, entry);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Brings a loaded index up to date with files changed or deleted while the IDE was closed, without
+     * enumerating the project; new files arrive as VFS events. Returns whether anything changed.
+     */
+    public boolean reconcile(Runnable checkCanceled) {
+        boolean changed = false;
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            checkCanceled.run();
+            Entry entry = stat(item.getKey());
+            if (entry == null) {
+                remove(item.getKey());
+                changed = true;
+            } else if (!entry.sameAs(item.getValue())) {
+                put(item.getKey(), entry);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // Same fingerprint, files, sizes and modification times, so saving again would write the same file
+    public boolean isSameAs(FileIndex other) {
+        if (other == null || !fingerprint.equals(other.fingerprint) || entries.size() != other.entries.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            if (!item.getValue().sameAs(other.entries.get(item.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static FileIndex load(Path file, long maxFileBytes) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith(HEADER)) {
+                return null;
+            }
+            FileIndex index = new FileIndex(header.substring(HEADER.length()), maxFileBytes);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 3) {
+                    return null;
+                }
+                index.put(unescape(fields[0]), new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+            }
+            return index;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    // Written to a temporary file first so a crash never leaves a truncated index behind
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + fingerprint);
+            writer.write('\n');
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                writer.write(escape(item.getKey()));
+                writer.write('\t');
+                writer.write(Long.toString(entry.size));
+                writer.write('\t');
+                writer.write(Long.toString(entry.modified));
+                writer.write('\n');
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public List<String> getPaths() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    // Bytes a snapshot of every indexed file would read, without binary files and capped per file
+    public long getTextBytes() {
+        return textBytes.get();
+    }
+
+    // The part of getTextBytes() in PHP files, which php_outline writes as much shorter outlines
+    public long getPhpBytes() {
+        return phpBytes.get();
+    }
+
+    public Entry get(String filePath) {
+        return entries.get(filePath);
+    }
+
+    // Re-stats a single file after a change; returns false if it no longer exists
+    public boolean update(String filePath) {
+        Entry entry = stat(filePath);
+        if (entry == null) {
+            remove(filePath);
+            return false;
+        }
+        put(filePath, entry);
+        return true;
+    }
+
+    // Removes a file, or a directory together with everything below it
+    public void removeTree(String path) {
+        remove(path);
+        for (String filePath : entries.subMap(path + "/", path + "/\uffff").keySet()) {
+            remove(filePath);
+        }
+    }
+
+    // All changes to entries go through put and remove, which keep the totals in step
+    private void put(String filePath, Entry entry) {
+        count(filePath, entry, 1);
+        count(filePath, entries.put(filePath, entry), -1);
+    }
+
+    private void remove(String filePath) {
+        count(filePath, entries.remove(filePath), -1);
+    }
+
+    private void count(String filePath, Entry entry, int sign) {
+        if (entry == null || FileContentReader.hasBinaryExtension(filePath)) {
+            return;
+        }
+        long bytes = sign * (maxFileBytes > 0 ? Math.min(entry.size, maxFileBytes) : entry.size);
+        textBytes.addAndGet(bytes);
+        if (filePath.endsWith(".php")) {
+            phpBytes.addAndGet(bytes);
+        }
+    }
+
+    private static Entry stat(String filePath) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    static String escape(String path) {
+        return path.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    static String unescape(String path) {
+        if (path.indexOf('\\') < 0) {
+            return path;
+        }
+        StringBuilder result = new StringBuilder(path.length());
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\\' && i + 1 < path.length()) {
+                char next = path.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    public static final class Entry {
+        private final long size;
+        private final long modified;
+
+        Entry(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        boolean sameAs(Entry other) {
+            return other != null && size == other.size && modified == other.modified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.gbti.snapshotsforai.core;
+
+/**
+ * Where a file's body was written in a snapshot, as UTF-8 byte offsets, and the content hash
+ * of the file if it was read completely.
+ */
+public final class FileSection {
+    private final String hash;
+    private final long offset;
+    private final long length;
+
+    FileSection(String hash, long offset, long length) {
+        this.hash = hash;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,219 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Files that are modified, staged or untracked relative to a base ref, taken from the git
+ * command line. git answers from its index and stat cache, so this stays fast on large
+ * repositories where walking and hashing the tree would not.
+ */
+public final class GitChanges {
+    private final List<String> files;
+    private final Map<String, String> diffs;
+
+    private GitChanges(List<String> files, Map<String, String> diffs) {
+        this.files = files;
+        this.diffs = diffs;
+    }
+
+    /**
+     * Collects the changes of the repository containing {@code directory}. Deleted files are left out.
+     * With {@code withDiffs}, the unified diff of every changed tracked file is collected as well.
+     * Paths are expressed under {@code directory} as given, even if it is reached through a symlink.
+     * {@code checkCanceled} is polled while git runs and may throw to stop it.
+     */
+    public static GitChanges collect(Path directory, String baseRef, boolean withDiffs, Runnable checkCanceled)
+            throws IOException {
+        String ref = baseRef == null || baseRef.isBlank() ? "HEAD" : baseRef.trim();
+        if (ref.startsWith("-")) {
+            throw new IOException("Invalid git base ref: " + ref);
+        }
+
+        // git reports the resolved top level, so paths are mapped back onto the directory the caller uses
+        Path realDirectory = directory.toRealPath();
+        Path root = Paths.get(new String(git(directory, checkCanceled, "rev-parse", "--show-toplevel"),
+                StandardCharsets.UTF_8).trim()).toRealPath();
+
+        // Working tree against the base ref covers both staged and unstaged changes
+        Set<String> changed = new LinkedHashSet<>();
+        splitNul(git(root, checkCanceled, "diff", "--name-only", "-z", "--no-renames", "--diff-filter=d", ref, "--"), changed);
+        splitNul(git(root, checkCanceled, "ls-files", "--others", "--exclude-standard", "-z"), changed);
+
+        List<String> files = new ArrayList<>();
+        for (String relativePath : changed) {
+            Path file = root.resolve(relativePath);
+            if (Files.isRegularFile(file)) {
+                files.add(toCallerPath(file, realDirectory, directory));
+            }
+        }
+
+        Map<String, String> diffs = new HashMap<>();
+        if (withDiffs) {
+            // Fixed prefixes, whatever diff.noprefix or diff.mnemonicPrefix say
+            String diff = new String(git(root, checkCanceled, "diff", "--no-color", "--no-ext-diff", "--no-renames",
+                    "--src-prefix=a/", "--dst-prefix=b/", ref, "--"), StandardCharsets.UTF_8);
+            splitDiff(diff, root, realDirectory, directory, diffs);
+        }
+        return new GitChanges(files, diffs);
+    }
+
+    private static String toCallerPath(Path file, Path realDirectory, Path directory) {
+        Path path = file.startsWith(realDirectory) ? directory.resolve(realDirectory.relativize(file)) : file;
+        return path.toString().replace('\\', '/');
+    }
+
+    // Absolute, forward-slash separated paths in git's order
+    public List<String> getFiles() {
+        return files;
+    }
+
+    // The diff of a changed tracked file from "--- a/" on, or null for untracked and binary files
+    public String getDiff(String filePath) {
+        return diffs.get(filePath);
+    }
+
+    private static byte[] git(Path directory, Runnable checkCanceled, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.add("-c");
+        command.add("core.quotePath=false");
+        command.addAll(Arrays.asList(args));
+
+        Process process;
+        try {
+            process = new ProcessBuilder(command).directory(directory.toFile()).start();
+        } catch (IOException ex) {
+            throw new IOException("git could not be started: " + ex.getMessage(), ex);
+        }
+        process.getOutputStream().close();
+
+        // Both pipes are drained on their own threads so git can't block on a full pipe while this one polls
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream error = new ByteArrayOutputStream();
+        Thread outputReader = new Thread(() -> drain(process.getInputStream(), output), "Snapshots for AI git stdout");
+        Thread errorReader = new Thread(() -> drain(process.getErrorStream(), error), "Snapshots for AI git stderr");
+        outputReader.setDaemon(true);
+        errorReader.setDaemon(true);
+        outputReader.start();
+        errorReader.start();
+
+        try {
+            while (!process.waitFor(100, TimeUnit.MILLISECONDS)) {
+                checkCanceled.run();
+            }
+            outputReader.join();
+            errorReader.join();
+        } catch (InterruptedException ex) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running git", ex);
+        } catch (RuntimeException ex) {
+            process.destroyForcibly();
+            throw ex;
+        }
+
+        int exitCode = process.exitValue();
+        if (exitCode != 0) {
+            String message = error.toString(StandardCharsets.UTF_8).trim();
+            throw new IOException("git " + args[0] + " failed: " + (message.isEmpty() ? "exit code " + exitCode : message));
+        }
+        return output.toByteArray();
+    }
+
+    private static void drain(InputStream in, ByteArrayOutputStream out) {
+        try {
+            in.transferTo(out);
+        } catch (IOException ignored) {
+            // The exit code still reports the failure
+        }
+    }
+
+    private static void splitNul(byte[] output, Set<String> paths) {
+        String text = new String(output, StandardCharsets.UTF_8);
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\0') {
+                if (i > start) {
+                    paths.add(text.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+    }
+
+    // Splits "git diff" output into per-file diffs keyed by absolute path
+    private static void splitDiff(String diff, Path root, Path realDirectory, Path directory, Map<String, String> diffs) {
+        int start = diff.startsWith("diff --git ") ? 0 : diff.indexOf("\ndiff --git ");
+        if (start > 0) {
+            start++;
+        }
+        while (start >= 0) {
+            int next = diff.indexOf("\ndiff --git ", start);
+            String section = diff.substring(start, next < 0 ? diff.length() : next + 1);
+
+            int header = section.indexOf("\n--- ") + 1;
+            int target = section.indexOf("\n+++ ", header) + 1;
+            if (header > 0 && target > 0) {
+                int targetEnd = section.indexOf('\n', target);
+                String path = targetEnd < 0 ? section.substring(target + 4) : section.substring(target + 4, targetEnd);
+                // A trailing tab marks names containing spaces
+                if (path.endsWith("\t")) {
+                    path = path.substring(0, path.length() - 1);
+                }
+                if (path.startsWith("\"")) {
+                    path = unquote(path);
+                }
+                if (path.startsWith("b/")) {
+                    diffs.put(toCallerPath(root.resolve(path.substring(2)), realDirectory, directory),
+                            section.substring(header));
+                }
+            }
+            start = next < 0 ? -1 : next + 1;
+        }
+    }
+
+    // git C-quotes paths with control characters, quotes or backslashes even with core.quotePath off
+    private static String unquote(String quoted) {
+        StringBuilder result = new StringBuilder();
+        ByteArrayOutputStream octets = new ByteArrayOutputStream();
+        for (int i = 1; i < quoted.length() - 1; i++) {
+            char c = quoted.charAt(i);
+            if (c == '\\' && i + 1 < quoted.length() - 1) {
+                char next = quoted.charAt(++i);
+                if (next >= '0' && next <= '7' && i + 2 < quoted.length()) {
+                    octets.write(Integer.parseInt(quoted.substring(i, i + 3), 8));
+                    i += 2;
+                    continue;
+                }
+                flush(octets, result);
+                result.append(next == 'n' ? '\n' : next == 't' ? '\t' : next);
+            } else {
+                flush(octets, result);
+                result.append(c);
+            }
+        }
+        flush(octets, result);
+        return result.toString();
+    }
+
+    private static void flush(ByteArrayOutputStream octets, StringBuilder result) {
+        if (octets.size() > 0) {
+            result.append(octets.toString(StandardCharsets.UTF_8));
+            octets.reset();
+        }
+    }
+}
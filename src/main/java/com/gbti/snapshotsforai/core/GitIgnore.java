@@ -0,0 +1,262 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code .gitignore} rules of a project, and optionally {@code .git/info/exclude}, with git's
+ * precedence: the deepest {@code .gitignore} that has a matching rule decides, the last matching
+ * rule within a file wins, and {@code !pattern} re-includes. Each directory's file is read and
+ * compiled the first time a path below it is checked and kept for the lifetime of the instance.
+ * <p>
+ * Callers walking a tree skip ignored directories, so {@link #isIgnored} only looks at the entry
+ * itself; {@link #isIgnoredPath} also checks every directory on the way to it.
+ */
+public final class GitIgnore {
+    private static final Node EMPTY = new Node(null, "", Collections.emptyList());
+
+    private final Path repositoryRoot;
+    // Path of the project directory relative to the repository root, with a trailing slash unless empty
+    private final String projectPrefix;
+    private final List<Rule> excludeRules;
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+
+    private GitIgnore(Path repositoryRoot, String projectPrefix, List<Rule> excludeRules) {
+        this.repositoryRoot = repositoryRoot;
+        this.projectPrefix = projectPrefix;
+        this.excludeRules = excludeRules;
+    }
+
+    /**
+     * Loads the rules for a project directory. If it is inside a git repository, {@code .gitignore}
+     * files between the repository root and the project directory apply as well.
+     */
+    public static GitIgnore load(Path projectRoot, boolean useInfoExclude) {
+        Path root = projectRoot.toAbsolutePath().normalize();
+        Path repositoryRoot = root;
+        for (Path dir = root; dir != null; dir = dir.getParent()) {
+            if (Files.isDirectory(dir.resolve(".git"))) {
+                repositoryRoot = dir;
+                break;
+            }
+        }
+
+        String prefix = repositoryRoot.relativize(root).toString().replace('\\', '/');
+        List<Rule> excludeRules = useInfoExclude
+                ? parse(repositoryRoot.resolve(".git").resolve("info").resolve("exclude"))
+                : Collections.emptyList();
+        return new GitIgnore(repositoryRoot, prefix.isEmpty() ? "" : prefix + "/", excludeRules);
+    }
+
+    // relativePath is relative to the project directory and forward-slash separated
+    public boolean isIgnored(String relativePath, boolean directory) {
+        String path = projectPrefix + relativePath;
+        int slash = path.lastIndexOf('/');
+        Node node = node(slash < 0 ? "" : path.substring(0, slash));
+        String name = path.substring(slash + 1);
+
+        for (; node != null; node = node.parent) {
+            String nodePath = node.dir.isEmpty() ? path : path.substring(node.dir.length() + 1);
+            Boolean ignored = match(node.rules, name, nodePath, directory);
+            if (ignored != null) {
+                return ignored;
+            }
+        }
+        Boolean ignored = match(excludeRules, name, path, directory);
+        return ignored != null && ignored;
+    }
+
+    // For a single file outside a walk: ignored if it or any directory above it is ignored
+    public boolean isIgnoredPath(String relativePath) {
+        for (int slash = relativePath.indexOf('/'); slash >= 0; slash = relativePath.indexOf('/', slash + 1)) {
+            if (isIgnored(relativePath.substring(0, slash), true)) {
+                return true;
+            }
+        }
+        return isIgnored(relativePath, false);
+    }
+
+    // The last matching rule decides; null when no rule matches
+    private static Boolean match(List<Rule> rules, String name, String path, boolean directory) {
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule rule = rules.get(i);
+            if (rule.matches(name, path, directory)) {
+                return !rule.negated;
+            }
+        }
+        return null;
+    }
+
+    // Directories without a .gitignore share their parent's node, so lookups skip them
+    private Node node(String dir) {
+        Node node = nodes.get(dir);
+        if (node != null) {
+            return node;
+        }
+        int slash = dir.lastIndexOf('/');
+        Node parent = dir.isEmpty() ? null : node(slash < 0 ? "" : dir.substring(0, slash));
+        List<Rule> rules = parse(repositoryRoot.resolve(dir).resolve(".gitignore"));
+        if (rules.isEmpty()) {
+            node = parent == null ? EMPTY : parent;
+        } else {
+            node = new Node(parent, dir, rules);
+        }
+        Node previous = nodes.putIfAbsent(dir, node);
+        return previous != null ? previous : node;
+    }
+
+    private static List<Rule> parse(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return Collections.emptyList();
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            // An unreadable ignore file ignores nothing, like git
+            return Collections.emptyList();
+        }
+        List<Rule> rules = new ArrayList<>();
+        for (String line : lines) {
+            Rule rule = Rule.parse(line);
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+
+    private static final class Node {
+        final Node parent;
+        // Repository-relative directory of the .gitignore, "" for the root
+        final String dir;
+        final List<Rule> rules;
+
+        Node(Node parent, String dir, List<Rule> rules) {
+            this.parent = parent;
+            this.dir = dir;
+            this.rules = rules;
+        }
+    }
+
+    static final class Rule {
+        final boolean negated;
+        final boolean directoryOnly;
+        // Rules with a slash before the end match the path from the .gitignore's directory, others any name
+        final boolean anchored;
+        // Set when the pattern has no wildcards, so it is compared without a regex
+        final String literal;
+        final Pattern pattern;
+
+        private Rule(boolean negated, boolean directoryOnly, boolean anchored, String literal, Pattern pattern) {
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.anchored = anchored;
+            this.literal = literal;
+            this.pattern = pattern;
+        }
+
+        static Rule parse(String line) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                return null;
+            }
+            // Trailing spaces are dropped unless escaped with a backslash
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+                end--;
+            }
+            String pattern = line.substring(0, end);
+
+            boolean negated = pattern.startsWith("!");
+            if (negated) {
+                pattern = pattern.substring(1);
+            } else if (pattern.startsWith("\\!") || pattern.startsWith("\\#")) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean anchored = pattern.indexOf('/') >= 0;
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                return null;
+            }
+
+            if (!hasSpecialCharacters(pattern)) {
+                return new Rule(negated, directoryOnly, anchored, pattern, null);
+            }
+            return new Rule(negated, directoryOnly, anchored, null, Pattern.compile(toRegex(pattern)));
+        }
+
+        boolean matches(String name, String path, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            String subject = anchored ? path : name;
+            return literal != null ? literal.equals(subject) : pattern.matcher(subject).matches();
+        }
+
+        private static boolean hasSpecialCharacters(String pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '?' || c == '[' || c == '\\') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Glob to regex with gitignore's "**" forms; "*", "?" and classes never match a slash
+        static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            int length = glob.length();
+            for (int i = 0; i < length; i++) {
+                char c = glob.charAt(i);
+                if (c == '*' && i + 1 < length && glob.charAt(i + 1) == '*'
+                        && (i == 0 || glob.charAt(i - 1) == '/')
+                        && (i + 2 == length || glob.charAt(i + 2) == '/')) {
+                    if (i + 2 == length) {
+                        // "dir/**" matches everything inside dir
+                        regex.append(".*");
+                    } else {
+                        // "**/" matches zero or more directories
+                        regex.append("(?:.*/)?");
+                    }
+                    i += 2;
+                } else if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if (c == '[') {
+                    int close = glob.indexOf(']', i + 2);
+                    if (close < 0) {
+                        regex.append("\\[");
+                        continue;
+                    }
+                    String body = glob.substring(i + 1, close);
+                    if (body.startsWith("!") || body.startsWith("^")) {
+                        body = "^" + body.substring(1);
+                    }
+                    regex.append('[').append(body.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = close;
+                } else if (c == '\\' && i + 1 < length) {
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Turns \r\n and \r into \n and guarantees a trailing newline on finish(), which is what
+// reading a file line by line and appending "\n" to each line produced
+final class LineNormalizingWriter extends Writer {
+    private final Writer out;
+    private boolean skipLineFeed;
+    private char last = '\n';
+
+    LineNormalizingWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            char c = buffer[i];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    start = i + 1;
+                    continue;
+                }
+            }
+            if (c == '\r') {
+                out.write(buffer, start, i - start);
+                out.write('\n');
+                start = i + 1;
+                skipLineFeed = true;
+            }
+        }
+        out.write(buffer, start, end - start);
+        last = buffer[end - 1] == '\r' ? '\n' : buffer[end - 1];
+    }
+
+    void finish() throws IOException {
+        if (last != '\n') {
+            out.write('\n');
+            last = '\n';
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
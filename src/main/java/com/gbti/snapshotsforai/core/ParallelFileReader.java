@@ -0,0 +1,136 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads and decodes files on a bounded worker pool ahead of the writer while handing the
+ * results back strictly in list order. Prefetched content is capped by {@code maxBufferedBytes};
+ * a file that alone exceeds the cap is not prefetched and gets streamed by the writer instead.
+ * <p>
+ * Bodies are held as Java strings, so each file is charged at two bytes per byte read: decoding
+ * never yields more chars than bytes, and a char takes at most two bytes.
+ */
+public final class ParallelFileReader implements AutoCloseable {
+    private final List<String> files;
+    private final FileContentReader contentReader;
+    private final long maxBufferedBytes;
+    private final int maxInFlight;
+    private final Runnable checkCanceled;
+    private final ExecutorService executor;
+    private final Future<FileBody>[] futures;
+    private final long[] reservedBytes;
+    // Charged sizes from the first stat, so a file waiting for room isn't stat'ed on every get; -1 until known
+    private final long[] sizes;
+    private long bufferedBytes;
+    private int nextToSubmit;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ParallelFileReader(List<String> files, FileContentReader contentReader, int concurrency,
+                              long maxBufferedBytes, Runnable checkCanceled) {
+        this.files = files;
+        this.contentReader = contentReader;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.maxInFlight = Math.max(1, concurrency) * 16;
+        this.checkCanceled = checkCanceled;
+        this.executor = concurrency > 1 ? Executors.newFixedThreadPool(concurrency, new ReaderThreadFactory()) : null;
+        this.futures = new Future[files.size()];
+        this.reservedBytes = new long[files.size()];
+        this.sizes = new long[files.size()];
+        Arrays.fill(sizes, -1);
+    }
+
+    // Returns the body of files.get(index); must be called with increasing indexes
+    public FileBody get(int index) throws IOException {
+        if (executor == null) {
+            return FileBody.deferred();
+        }
+
+        fill(index);
+        Future<FileBody> future = futures[index];
+        if (future == null) {
+            return FileBody.deferred();
+        }
+
+        try {
+            while (true) {
+                checkCanceled.run();
+                try {
+                    return future.get(100, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ignored) {
+                    // Poll again so cancellation stays responsive while a slow read is in progress
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + files.get(index), ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Error reading " + files.get(index), ex.getCause());
+        } finally {
+            futures[index] = null;
+            bufferedBytes -= reservedBytes[index];
+        }
+    }
+
+    private void fill(int index) {
+        if (nextToSubmit <= index) {
+            nextToSubmit = index;
+        }
+        while (nextToSubmit < files.size()) {
+            String filePath = files.get(nextToSubmit);
+            long size = chargedSize(nextToSubmit);
+            if (size > maxBufferedBytes) {
+                // Too large to hold in memory; leave it for the writer to stream
+                nextToSubmit++;
+                continue;
+            }
+            if ((bufferedBytes + size > maxBufferedBytes || nextToSubmit - index >= maxInFlight) && nextToSubmit > index) {
+                break;
+            }
+            reservedBytes[nextToSubmit] = size;
+            bufferedBytes += size;
+            futures[nextToSubmit] = executor.submit(() -> contentReader.read(Paths.get(filePath)));
+            nextToSubmit++;
+        }
+    }
+
+    private long chargedSize(int index) {
+        if (sizes[index] < 0) {
+            try {
+                sizes[index] = 2 * contentReader.readableSize(Files.size(Paths.get(files.get(index))));
+            } catch (IOException ex) {
+                sizes[index] = 0;
+            }
+        }
+        return sizes[index];
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class ReaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Snapshots for AI file reader " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.gbti.snapshotsforai.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled form of {@code excluded_patterns} / {@code included_patterns}.
+ * <p>
+ * Patterns without a slash are matched against a single path segment (a file or directory name):
+ * literal names go into a hash set, {@code *.ext} style globs into a suffix table and
+ * {@code prefix*} globs into a prefix list, so only real wildcards fall back to a regex.
+ * Patterns containing a slash are matched against the project-relative path.
+ */
+public final class PatternMatcher {
+    private final SegmentPatterns excluded;
+    private final SegmentPatterns included;
+
+    private PatternMatcher(SegmentPatterns excluded, SegmentPatterns included) {
+        this.excluded = excluded;
+        this.included = included;
+    }
+
+    public static PatternMatcher compile(List<String> excludedPatterns, List<String> includedPatterns) {
+        return new PatternMatcher(new SegmentPatterns(excludedPatterns), new SegmentPatterns(includedPatterns));
+    }
+
+    // Directories are checked once when the walker reaches them; a match prunes the whole subtree
+    public boolean isExcludedDirectory(String name, String relativePath) {
+        return excluded.matches(name, relativePath);
+    }
+
+    // Include patterns rescue a file from the file-level exclusions, never from an excluded directory
+    public boolean isIncludedFile(String name, String relativePath) {
+        if (included.isEmpty()) {
+            return true; // If no include patterns, consider all files included
+        }
+        return included.matches(name, relativePath) || !excluded.matches(name, relativePath);
+    }
+
+    // Files ignored by git count as file-level exclusions, so include patterns can still bring them back
+    public boolean isIncludedFile(String name, String relativePath, boolean gitIgnored) {
+        if (!gitIgnored) {
+            return isIncludedFile(name, relativePath);
+        }
+        return included.matches(name, relativePath);
+    }
+
+    public boolean isIncludedPath(String relativePath) {
+        return isIncludedPath(relativePath, null);
+    }
+
+    // Checks a single file the way a walk from the project root would reach it; gitIgnore may be null
+    public boolean isIncludedPath(String relativePath, GitIgnore gitIgnore) {
+        int end = relativePath.indexOf('/');
+        int start = 0;
+        while (end >= 0) {
+            String dirPath = relativePath.substring(0, end);
+            if (isExcludedDirectory(relativePath.substring(start, end), dirPath)
+                    || gitIgnore != null && gitIgnore.isIgnored(dirPath, true)) {
+                return false;
+            }
+            start = end + 1;
+            end = relativePath.indexOf('/', start);
+        }
+        boolean gitIgnored = gitIgnore != null && gitIgnore.isIgnored(relativePath, false);
+        return isIncludedFile(relativePath.substring(start), relativePath, gitIgnored);
+    }
+
+    private static final class SegmentPatterns {
+        private final Set<String> names = new HashSet<>();
+        private final Set<String> dotSuffixes = new HashSet<>();
+        private final List<String> suffixes = new ArrayList<>();
+        private final List<String> prefixes = new ArrayList<>();
+        private final List<Pattern> namePatterns = new ArrayList<>();
+        private final List<Pattern> pathPatterns = new ArrayList<>();
+
+        SegmentPatterns(List<String> patterns) {
+            for (String pattern : patterns) {
+                add(pattern.trim().replace('\\', '/'));
+            }
+        }
+
+        private void add(String pattern) {
+            while (pattern.endsWith("/")) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            while (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                return;
+            }
+
+            if (pattern.indexOf('/') >= 0) {
+                pathPatterns.add(globToRegex(pattern, true));
+                return;
+            }
+
+            int wildcards = countWildcards(pattern);
+            if (wildcards == 0) {
+                names.add(pattern);
+            } else if (wildcards == 1 && pattern.charAt(0) == '*') {
+                String suffix = pattern.substring(1);
+                if (suffix.startsWith(".")) {
+                    dotSuffixes.add(suffix);
+                } else {
+                    suffixes.add(suffix);
+                }
+            } else if (wildcards == 1 && pattern.charAt(pattern.length() - 1) == '*') {
+                prefixes.add(pattern.substring(0, pattern.length() - 1));
+            } else {
+                namePatterns.add(globToRegex(pattern, false));
+            }
+        }
+
+        boolean isEmpty() {
+            return names.isEmpty() && dotSuffixes.isEmpty() && suffixes.isEmpty() && prefixes.isEmpty()
+                    && namePatterns.isEmpty() && pathPatterns.isEmpty();
+        }
+
+        boolean matches(String name, String relativePath) {
+            if (names.contains(name)) {
+                return true;
+            }
+            if (!dotSuffixes.isEmpty()) {
+                // "a.min.js" is looked up as ".min.js" and ".js"
+                for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+                    if (dotSuffixes.contains(name.substring(dot))) {
+                        return true;
+                    }
+                }
+            }
+            for (String suffix : suffixes) {
+                if (name.endsWith(suffix)) {
+                    return true;
+                }
+            }
+            for (String prefix : prefixes) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            for (Pattern pattern : namePatterns) {
+                if (pattern.matcher(name).matches()) {
+                    return true;
+                }
+            }
+            for (Pattern pattern : pathPatterns) {
+                if (pattern.matcher(relativePath).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int countWildcards(String pattern) {
+            int count = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '?') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    static Pattern globToRegex(String glob, boolean path) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                if (c == '?') {
+                    regex.append(path ? "[^/]" : ".");
+                } else if (path && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append(path ? "[^/]*" : ".*");
+                }
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
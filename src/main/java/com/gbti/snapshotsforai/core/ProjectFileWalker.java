@@ -0,0 +1,81 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Walks a project tree once, skipping excluded directories as soon as they are reached
+ * instead of descending into them and filtering every file inside.
+ */
+public final class ProjectFileWalker {
+    private final PatternMatcher matcher;
+    private final GitIgnore gitIgnore;
+
+    public ProjectFileWalker(PatternMatcher matcher) {
+        this(matcher, null);
+    }
+
+    // gitIgnore may be null when .gitignore files are not respected
+    public ProjectFileWalker(PatternMatcher matcher, GitIgnore gitIgnore) {
+        this.matcher = matcher;
+        this.gitIgnore = gitIgnore;
+    }
+
+    /**
+     * Returns the absolute, forward-slash separated paths of all files that survive the patterns.
+     * {@code checkCanceled} is invoked for every visited entry and may throw to abort the walk.
+     */
+    public List<String> walk(Path root, Runnable checkCanceled) throws IOException {
+        List<String> fileList = new ArrayList<>();
+        int rootLength = toPathString(root).length() + 1;
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                checkCanceled.run();
+                if (!dir.equals(root)) {
+                    // Each directory name is matched exactly once; ancestors were already checked on the way down
+                    String relativePath = toPathString(dir).substring(rootLength);
+                    if (matcher.isExcludedDirectory(dir.getFileName().toString(), relativePath)
+                            || gitIgnore != null && gitIgnore.isIgnored(relativePath, true)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                checkCanceled.run();
+                boolean regularFile = attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file));
+                if (regularFile) {
+                    String filePath = toPathString(file);
+                    String relativePath = filePath.substring(rootLength);
+                    boolean gitIgnored = gitIgnore != null && gitIgnore.isIgnored(relativePath, false);
+                    if (matcher.isIncludedFile(file.getFileName().toString(), relativePath, gitIgnored)) {
+                        fileList.add(filePath);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // Unreadable entries are left out rather than aborting the whole snapshot
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return fileList;
+    }
+
+    private static String toPathString(Path path) {
+        return path.toString().replace('\\', '/');
+    }
+}
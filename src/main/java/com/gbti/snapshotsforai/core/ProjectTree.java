@@ -0,0 +1,157 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The "# Project Structure" tree. Children are looked up by hash, paths are inserted and the tree
+ * is rendered without recursion, and siblings are sorted (directories first, then by name) so the
+ * output doesn't depend on the order files were enumerated in.
+ */
+public final class ProjectTree {
+    private static final Comparator<Node> ORDER = Comparator
+            .comparing((Node node) -> !node.isDirectory())
+            .thenComparing(node -> node.name);
+
+    private final Node root = new Node("");
+
+    public static ProjectTree build(String basePath, List<String> filePaths) {
+        ProjectTree tree = new ProjectTree();
+        String prefix = basePath.replace('\\', '/');
+        prefix = prefix.endsWith("/") ? prefix : prefix + "/";
+        Path base = null;
+
+        for (String filePath : filePaths) {
+            if (filePath.startsWith(prefix)) {
+                tree.add(filePath.substring(prefix.length()));
+            } else {
+                // Content roots outside the project directory keep their relative "../" form
+                if (base == null) {
+                    base = Paths.get(basePath);
+                }
+                tree.add(base.relativize(Paths.get(filePath)).toString().replace('\\', '/'));
+            }
+        }
+        return tree;
+    }
+
+    public void add(String relativePath) {
+        Node node = root;
+        int start = 0;
+        while (start < relativePath.length()) {
+            int end = relativePath.indexOf('/', start);
+            if (end < 0) {
+                end = relativePath.length();
+            }
+            if (end > start) {
+                node = node.child(relativePath.substring(start, end));
+            }
+            start = end + 1;
+        }
+        if (node != root && !node.counted) {
+            node.counted = true;
+            // Counted on every ancestor so compact mode can summarize a directory without walking it
+            for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+                ancestor.fileCount++;
+            }
+        }
+    }
+
+    /**
+     * Renders the tree with four spaces per level, "+ " for directories and "- " for files.
+     * In compact mode, chains of single-child directories are folded into one line and a directory
+     * with more than {@code maxEntries} direct children is summarized as "+ name/ (N files)".
+     */
+    public void render(Appendable out, boolean compact, int maxEntries) throws IOException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        pushChildren(stack, root, 0);
+
+        StringBuilder line = new StringBuilder();
+        while (!stack.isEmpty()) {
+            Frame frame = stack.pop();
+            Node node = frame.node;
+            line.setLength(0);
+            line.append("    ".repeat(frame.level)).append(node.isDirectory() ? "+ " : "- ").append(node.name);
+
+            if (compact && node.isDirectory()) {
+                while (node.children.size() == 1) {
+                    Node only = node.children.values().iterator().next();
+                    if (!only.isDirectory()) {
+                        break;
+                    }
+                    node = only;
+                    line.append('/').append(node.name);
+                }
+                if (maxEntries > 0 && node.children.size() > maxEntries) {
+                    line.append("/ (").append(String.format(Locale.ROOT, "%,d", node.fileCount)).append(" files)\n");
+                    out.append(line);
+                    continue;
+                }
+            }
+
+            out.append(line).append('\n');
+            if (node.isDirectory()) {
+                pushChildren(stack, node, frame.level + 1);
+            }
+        }
+    }
+
+    private static void pushChildren(Deque<Frame> stack, Node node, int level) {
+        if (node.children == null) {
+            return;
+        }
+        List<Node> children = new ArrayList<>(node.children.values());
+        children.sort(ORDER);
+        for (int i = children.size() - 1; i >= 0; i--) {
+            stack.push(new Frame(children.get(i), level));
+        }
+    }
+
+    private static final class Node {
+        private final String name;
+        private Node parent;
+        private Map<String, Node> children;
+        private int fileCount;
+        private boolean counted;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        boolean isDirectory() {
+            return children != null && !children.isEmpty();
+        }
+
+        Node child(String name) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            Node child = children.get(name);
+            if (child == null) {
+                child = new Node(name);
+                child.parent = this;
+                children.put(name, child);
+            }
+            return child;
+        }
+    }
+
+    private static final class Frame {
+        private final Node node;
+        private final int level;
+
+        Frame(Node node, int level) {
+            this.node = node;
+            this.level = level;
+        }
+    }
+}
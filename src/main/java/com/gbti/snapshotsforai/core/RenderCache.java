@@ -0,0 +1,110 @@
+package com.gbti.snapshotsforai.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Rendered file bodies and the rendered project structure from earlier snapshots, so that a
+ * snapshot of a mostly unchanged project only has to read the files that changed since.
+ * <p>
+ * File bodies are keyed by path and validated against size and modification time; the stored
+ * content hash identifies exactly which bytes the body was rendered from. Least recently used
+ * bodies are evicted once their total size exceeds the budget.
+ */
+public final class RenderCache {
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private List<String> structureFiles;
+    private boolean structureCompact;
+    private int structureMaxEntries;
+    private String structure;
+
+    public RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    // Returns the cached body if the file still has the size and modification time it was rendered with
+    public synchronized FileBody getBody(String filePath, long size, long modified) {
+        Entry entry = entries.get(filePath);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.size != size || entry.modified != modified) {
+            remove(filePath);
+            return null;
+        }
+        return entry.body;
+    }
+
+    // Only complete text bodies are cached; errors, deferred and partial reads are always redone
+    public synchronized void putBody(String filePath, long size, long modified, FileBody body) {
+        if (body.isDeferred() || body.getError() != null || body.getHash() == null) {
+            return;
+        }
+        long bytes = weigh(filePath, body);
+        if (bytes > maxBytes) {
+            return;
+        }
+        remove(filePath);
+        entries.put(filePath, new Entry(size, modified, body, bytes));
+        totalBytes += bytes;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    // The structure only depends on the file set and the render options
+    public synchronized String getStructure(List<String> files, boolean compact, int maxEntries) {
+        if (structure != null && compact == structureCompact && maxEntries == structureMaxEntries && files.equals(structureFiles)) {
+            return structure;
+        }
+        return null;
+    }
+
+    public synchronized void putStructure(List<String> files, boolean compact, int maxEntries, String rendered) {
+        structureFiles = List.copyOf(files);
+        structureCompact = compact;
+        structureMaxEntries = maxEntries;
+        structure = rendered;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void remove(String filePath) {
+        Entry old = entries.remove(filePath);
+        if (old != null) {
+            totalBytes -= old.bytes;
+        }
+    }
+
+    // Strings are UTF-16 in memory; the path and map overhead are counted roughly
+    private static long weigh(String filePath, FileBody body) {
+        return 2L * (filePath.length() + body.getText().length() + body.getHash().length()) + 64;
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final FileBody body;
+        private final long bytes;
+
+        Entry(long size, long modified, FileBody body, long bytes) {
+            this.size = size;
+            this.modified = modified;
+            this.body = body;
+            this.bytes = bytes;
+        }
+    }
+}
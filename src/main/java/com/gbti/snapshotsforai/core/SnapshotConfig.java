@@ -0,0 +1,235 @@
+package com.gbti.snapshotsforai.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A parsed .snapshots/config.json together with the matcher compiled from its patterns.
+ * Instances are immutable so they can be cached and shared between snapshot runs.
+ */
+public final class SnapshotConfig {
+    private final String defaultPrompt;
+    private final boolean defaultIncludeEntireProjectStructure;
+    private final boolean defaultIncludeAllFiles;
+    private final String defaultGitBaseRef;
+    private final boolean defaultGitDiffHunks;
+    private final boolean defaultIncludeRelatedFiles;
+    private final PatternMatcher matcher;
+    private final String fileEnumeration;
+    private final int readConcurrency;
+    private final long readBufferBytes;
+    private final long maxFileBytes;
+    private final boolean compactStructure;
+    private final int structureMaxEntries;
+    private final long renderCacheBytes;
+    private final boolean deltaAsDiff;
+    private final long maxTokens;
+    private final String phpOutline;
+    private final int relatedFilesDepth;
+    private final boolean respectGitignore;
+    private final boolean respectGitInfoExclude;
+    private final boolean relatedFilesIncludeVendor;
+    private final SecretRedactor redactor;
+    private final boolean statsFooter;
+    private final boolean metricsLog;
+    private final SnapshotRetention retention;
+    private final String fingerprint;
+
+    private SnapshotConfig(JSONObject config, String fingerprint) {
+        this.fingerprint = fingerprint;
+        JSONObject defaultConfig = config.optJSONObject("default");
+        if (defaultConfig == null) {
+            defaultConfig = new JSONObject();
+        }
+        this.defaultPrompt = defaultConfig.optString("default_prompt", "");
+        this.defaultIncludeEntireProjectStructure = defaultConfig.optBoolean("default_include_entire_project_structure", false);
+        this.defaultIncludeAllFiles = defaultConfig.optBoolean("default_include_all_files", false);
+        this.defaultGitBaseRef = defaultConfig.optString("default_git_base_ref", DefaultConfig.GIT_BASE_REF);
+        this.defaultGitDiffHunks = defaultConfig.optBoolean("default_git_diff_hunks", false);
+        this.defaultIncludeRelatedFiles = defaultConfig.optBoolean("default_include_related_files", false);
+        this.matcher = PatternMatcher.compile(toStringList(config.optJSONArray("excluded_patterns")),
+                toStringList(config.optJSONArray("included_patterns")));
+        this.fileEnumeration = config.optString("file_enumeration", DefaultConfig.FILE_ENUMERATION);
+        this.readConcurrency = config.optInt("read_concurrency", DefaultConfig.READ_CONCURRENCY);
+        this.readBufferBytes = config.optLong("read_buffer_mb", DefaultConfig.READ_BUFFER_MB) * 1024 * 1024;
+        this.maxFileBytes = config.optLong("max_file_size_kb", DefaultConfig.MAX_FILE_SIZE_KB) * 1024;
+        this.compactStructure = "compact".equals(config.optString("structure_mode", DefaultConfig.STRUCTURE_MODE));
+        this.structureMaxEntries = config.optInt("structure_max_entries", DefaultConfig.STRUCTURE_MAX_ENTRIES);
+        this.renderCacheBytes = config.optLong("render_cache_mb", DefaultConfig.RENDER_CACHE_MB) * 1024 * 1024;
+        this.deltaAsDiff = !"full".equals(config.optString("delta_format", DefaultConfig.DELTA_FORMAT));
+        this.maxTokens = config.optLong("max_tokens", DefaultConfig.MAX_TOKENS);
+        this.phpOutline = config.optString("php_outline", DefaultConfig.PHP_OUTLINE);
+        this.relatedFilesDepth = config.optInt("related_files_depth", DefaultConfig.RELATED_FILES_DEPTH);
+        this.relatedFilesIncludeVendor = config.optBoolean("related_files_include_vendor", false);
+        this.respectGitignore = config.optBoolean("respect_gitignore", DefaultConfig.RESPECT_GITIGNORE);
+        this.respectGitInfoExclude = config.optBoolean("respect_git_info_exclude", DefaultConfig.RESPECT_GIT_INFO_EXCLUDE);
+        this.redactor = config.optBoolean("redact_secrets", DefaultConfig.REDACT_SECRETS)
+                ? compileRedactor(toStringList(config.optJSONArray("redaction_patterns")))
+                : null;
+        this.statsFooter = config.optBoolean("stats_footer", DefaultConfig.STATS_FOOTER);
+        this.metricsLog = config.optBoolean("metrics_log", DefaultConfig.METRICS_LOG);
+        this.retention = new SnapshotRetention(
+                config.optInt("retention_keep_snapshots", DefaultConfig.RETENTION_KEEP_SNAPSHOTS),
+                config.optInt("retention_max_age_days", DefaultConfig.RETENTION_MAX_AGE_DAYS),
+                config.optLong("retention_max_total_mb", DefaultConfig.RETENTION_MAX_TOTAL_MB) * 1024 * 1024,
+                config.optBoolean("retention_archive", DefaultConfig.RETENTION_ARCHIVE));
+    }
+
+    // Reported like a JSON syntax error, so an invalid pattern is shown to the user instead of failing the snapshot
+    private static SecretRedactor compileRedactor(List<String> patterns) {
+        try {
+            return SecretRedactor.create(patterns);
+        } catch (PatternSyntaxException ex) {
+            throw new JSONException("Invalid redaction_patterns entry: " + ex.getMessage(), ex);
+        }
+    }
+
+    // Throws JSONException with a position-bearing message if the content is not valid JSON
+    public static SnapshotConfig parse(String content) throws JSONException {
+        return new SnapshotConfig(new JSONObject(content), fingerprint(content));
+    }
+
+    private static String fingerprint(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        }
+    }
+
+    private static List<String> toStringList(JSONArray array) {
+        List<String> list = new ArrayList<>();
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                list.add(array.getString(i));
+            }
+        }
+        return list;
+    }
+
+    public String getDefaultPrompt() {
+        return defaultPrompt;
+    }
+
+    public boolean isDefaultIncludeEntireProjectStructure() {
+        return defaultIncludeEntireProjectStructure;
+    }
+
+    public boolean isDefaultIncludeAllFiles() {
+        return defaultIncludeAllFiles;
+    }
+
+    public String getDefaultGitBaseRef() {
+        return defaultGitBaseRef;
+    }
+
+    public boolean isDefaultGitDiffHunks() {
+        return defaultGitDiffHunks;
+    }
+
+    public boolean isDefaultIncludeRelatedFiles() {
+        return defaultIncludeRelatedFiles;
+    }
+
+    public PatternMatcher getMatcher() {
+        return matcher;
+    }
+
+    public boolean isRespectGitignore() {
+        return respectGitignore;
+    }
+
+    public boolean isRespectGitInfoExclude() {
+        return respectGitInfoExclude;
+    }
+
+    public boolean isFilesystemEnumeration() {
+        return "filesystem".equals(fileEnumeration);
+    }
+
+    public int getReadConcurrency() {
+        return readConcurrency;
+    }
+
+    public long getReadBufferBytes() {
+        return readBufferBytes;
+    }
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    public boolean isCompactStructure() {
+        return compactStructure;
+    }
+
+    public int getStructureMaxEntries() {
+        return structureMaxEntries;
+    }
+
+    public long getRenderCacheBytes() {
+        return renderCacheBytes;
+    }
+
+    public boolean isDeltaAsDiff() {
+        return deltaAsDiff;
+    }
+
+    // 0 means no limit
+    public long getMaxTokens() {
+        return maxTokens;
+    }
+
+    // "all" or "unopened" render PHP files as outlines; "unopened" keeps open files in full
+    public boolean isPhpOutline() {
+        return "all".equals(phpOutline) || isPhpOutlineUnopenedOnly();
+    }
+
+    public boolean isPhpOutlineUnopenedOnly() {
+        return "unopened".equals(phpOutline);
+    }
+
+    public int getRelatedFilesDepth() {
+        return relatedFilesDepth;
+    }
+
+    public boolean isRelatedFilesIncludeVendor() {
+        return relatedFilesIncludeVendor;
+    }
+
+    // null when redact_secrets is off
+    public SecretRedactor getRedactor() {
+        return redactor;
+    }
+
+    public boolean isStatsFooter() {
+        return statsFooter;
+    }
+
+    // Whether each snapshot appends its timings to .snapshots/metrics.jsonl
+    public boolean isMetricsLog() {
+        return metricsLog;
+    }
+
+    public SnapshotRetention getRetention() {
+        return retention;
+    }
+
+    // Hash of the raw config.json content; changes whenever the file is edited
+    public String getFingerprint() {
+        return fingerprint;
+    }
+}
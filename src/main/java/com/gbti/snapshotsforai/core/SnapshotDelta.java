@@ -0,0 +1,117 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Classifies the current files against the manifest of the previous snapshot. Size and
+ * modification time decide quickly for untouched files; anything else is read and compared
+ * by content hash, so a file that was only saved again still counts as unchanged.
+ */
+public final class SnapshotDelta {
+    private final List<String> added = new ArrayList<>();
+    private final List<String> modified = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+    private final SnapshotManifest manifest = new SnapshotManifest();
+    private int unchanged;
+
+    private SnapshotDelta() {
+    }
+
+    /**
+     * Files that were read for the comparison are left in {@code renderCache}, so writing the
+     * changed bodies afterwards doesn't read them a second time. Files with unsaved changes in
+     * {@code contentSource} (may be null) count as modified without being decoded.
+     */
+    public static SnapshotDelta compute(SnapshotManifest previous, List<String> files, FileContentReader contentReader,
+                                        RenderCache renderCache, FileContentSource contentSource, Runnable checkCanceled) {
+        SnapshotDelta delta = new SnapshotDelta();
+        Set<String> current = new HashSet<>(files);
+
+        // Entries of files outside the current selection carry over, so they stay comparable later
+        for (SnapshotManifest.Entry entry : previous.getEntries()) {
+            if (!current.contains(entry.getPath()) && Files.exists(Paths.get(entry.getPath()))) {
+                delta.manifest.put(entry);
+            } else if (!current.contains(entry.getPath())) {
+                delta.removed.add(entry.getPath());
+            }
+        }
+
+        for (String filePath : files) {
+            checkCanceled.run();
+            SnapshotManifest.Entry old = previous.get(filePath);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class);
+            } catch (IOException ex) {
+                // Unreadable now; listed as changed so the error shows up in the snapshot
+                (old == null ? delta.added : delta.modified).add(filePath);
+                continue;
+            }
+            long size = attributes.size();
+            long modifiedTime = attributes.lastModifiedTime().toMillis();
+
+            if (old == null) {
+                delta.added.add(filePath);
+                continue;
+            }
+            if (contentSource != null && contentSource.hasUnsavedChanges(filePath)) {
+                // Unsaved changes can't be matched against a stored hash without decoding them
+                delta.modified.add(filePath);
+                continue;
+            }
+            // Binary, truncated and outlined bodies have no hash, so size and modification time decide on their own
+            if (old.getSize() == size && old.getModified() == modifiedTime) {
+                delta.unchanged++;
+                delta.manifest.put(old);
+                continue;
+            }
+
+            FileBody body = renderCache.getBody(filePath, size, modifiedTime);
+            if (body == null) {
+                body = contentReader.read(Paths.get(filePath));
+                renderCache.putBody(filePath, size, modifiedTime, body);
+            }
+            if (body.getHash() != null && Objects.equals(body.getHash(), old.getHash())) {
+                delta.unchanged++;
+                delta.manifest.put(new SnapshotManifest.Entry(filePath, size, modifiedTime, old.getHash(),
+                        old.getSnapshot(), old.getOffset(), old.getLength()));
+            } else {
+                delta.modified.add(filePath);
+            }
+        }
+        return delta;
+    }
+
+    public List<String> getAdded() {
+        return added;
+    }
+
+    public List<String> getModified() {
+        return modified;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public int getUnchangedCount() {
+        return unchanged;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+    }
+
+    // Unchanged and carried-over entries; the caller adds the files it writes
+    public SnapshotManifest getManifest() {
+        return manifest;
+    }
+}
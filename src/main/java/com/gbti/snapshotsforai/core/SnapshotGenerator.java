@@ -0,0 +1,415 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the body of a full snapshot: the project structure, the file list and every file's contents
+ * in selection order. It depends on nothing but the file system, so the same code runs inside the IDE,
+ * from the command line and in benchmarks; the IDE passes in its progress indicator and any renderer
+ * that needs the PHP index. Time, files and bytes of each phase are recorded in {@link SnapshotMetrics}.
+ */
+public final class SnapshotGenerator {
+    /**
+     * Progress reporting and cancellation. {@link #checkCanceled()} may throw to abort the snapshot.
+     */
+    public interface Progress {
+        Progress NONE = () -> {
+        };
+
+        void checkCanceled();
+
+        default void setText(String text) {
+        }
+
+        default void setText2(String text) {
+        }
+
+        // Also switches from indeterminate to determinate progress
+        default void setFraction(double fraction) {
+        }
+    }
+
+    // Beyond this many changed lines a file's new body is written instead of a diff
+    private static final int DIFF_MAX_EDITS = 1000;
+    // Sorts chronologically, which SnapshotManifest.findLatest and SnapshotRetention rely on
+    private static final DateTimeFormatter FILE_NAME_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH_mm_ss");
+
+    private final SnapshotConfig config;
+    private final FileContentReader contentReader;
+    private final RenderCache renderCache;
+    private final TokenBudget budget;
+    private final Progress progress;
+    private final SnapshotMetrics metrics;
+
+    public SnapshotGenerator(SnapshotConfig config, FileContentReader contentReader, RenderCache renderCache,
+                             TokenBudget budget, Progress progress, SnapshotMetrics metrics) {
+        this.config = config;
+        this.contentReader = contentReader;
+        this.renderCache = renderCache;
+        this.budget = budget;
+        this.progress = progress;
+        this.metrics = metrics;
+    }
+
+    public static String fileName(LocalDateTime time) {
+        return "snapshot-" + time.format(FILE_NAME_TIMESTAMP) + ".md";
+    }
+
+    /**
+     * Keeps the files under {@code basePath} that the config's patterns and {@code gitIgnore} allow,
+     * for selections that don't come from a walk, such as the files git reports as changed.
+     */
+    public static List<String> filterByPatterns(List<String> filePaths, String basePath, SnapshotConfig config,
+                                                GitIgnore gitIgnore) {
+        String prefix = basePath.replace('\\', '/') + "/";
+        List<String> filteredFiles = new ArrayList<>();
+        for (String filePath : filePaths) {
+            if (filePath.startsWith(prefix) && config.getMatcher().isIncludedPath(filePath.substring(prefix.length()), gitIgnore)) {
+                filteredFiles.add(filePath);
+            }
+        }
+        return filteredFiles;
+    }
+
+    // Images and other known binary formats; anything else is sniffed when it is read
+    public static List<String> filterOutBinaryFiles(List<String> filePaths) {
+        List<String> filteredFiles = new ArrayList<>();
+        for (String filePath : filePaths) {
+            if (!FileContentReader.hasBinaryExtension(filePath)) {
+                filteredFiles.add(filePath);
+            }
+        }
+        return filteredFiles;
+    }
+
+    /**
+     * Writes the structure of {@code projectFiles}, if given, followed by the selected files.
+     *
+     * @param projectFiles all project files for the structure section, or null to leave it out
+     * @param gitDiffs     files to write as their git diff hunks instead of their contents, or null
+     * @param bodyRenderer  alternative bodies such as PHP outlines, or null
+     * @param contentSource contents held in memory, such as open editors, preferred over disk; or null
+     * @param fileName      name of the snapshot file, recorded in the manifest
+     */
+    public SnapshotManifest write(SnapshotWriter writer, String basePath, List<String> projectFiles,
+                                  List<String> selectedFiles, GitChanges gitDiffs, BodyRenderer bodyRenderer,
+                                  FileContentSource contentSource, String fileName) throws IOException {
+        if (projectFiles != null) {
+            progress.setText("Building project structure...");
+            SnapshotMetrics.Phase phase = metrics.phase(SnapshotMetrics.STRUCTURE).start().seen(projectFiles.size());
+            long position = writer.position();
+            writeStructure(writer, basePath, projectFiles);
+            phase.written(writer.position() - position).stop();
+        }
+
+        SnapshotMetrics.Phase phase = metrics.phase(SnapshotMetrics.WRITE).start();
+        long position = writer.position();
+        writer.append("# Project Files\n\n");
+        for (String filePath : selectedFiles) {
+            writer.append("- ").append(filePath).append("\n");
+        }
+        writer.append("\n");
+        phase.written(writer.position() - position).stop();
+
+        return writeFiles(writer, basePath, selectedFiles, gitDiffs, bodyRenderer, contentSource, fileName);
+    }
+
+    public void writeStructure(SnapshotWriter writer, String basePath, List<String> projectFiles) throws IOException {
+        writer.append("# Project Structure\n\n");
+        // Regenerated only when the file set or the structure options changed since the last snapshot
+        String structure = renderCache.isEnabled()
+                ? renderCache.getStructure(projectFiles, config.isCompactStructure(), config.getStructureMaxEntries())
+                : null;
+        StringBuilder rendered = new StringBuilder();
+        try {
+            if (structure == null) {
+                ProjectTree.build(basePath, projectFiles)
+                        .render(rendered, config.isCompactStructure(), config.getStructureMaxEntries());
+                structure = rendered.toString();
+                if (renderCache.isEnabled()) {
+                    renderCache.putStructure(projectFiles, config.isCompactStructure(), config.getStructureMaxEntries(), structure);
+                }
+            }
+            writer.append(structure);
+        } catch (IOException | RuntimeException ex) {
+            writer.append(rendered);
+            writer.append("Exception occurred while formatting project structure: ").append(String.valueOf(ex.getMessage())).append("\n");
+            for (StackTraceElement element : ex.getStackTrace()) {
+                writer.append(element.toString()).append("\n");
+            }
+        }
+        writer.append("\n\n");
+    }
+
+    /**
+     * Writes the added, modified and removed files relative to the previous snapshot. Modified files
+     * become unified diffs against the body stored in an earlier snapshot when it can still be read
+     * back, or full bodies when it can't, when the diff would be too large, or if delta_format is full.
+     *
+     * @param previousSnapshot name of the snapshot the delta was computed against
+     * @param contentSource    contents held in memory, such as open editors, preferred over disk; or null
+     */
+    public SnapshotManifest writeChanges(SnapshotWriter writer, String basePath, SnapshotDelta delta, SnapshotManifest previous,
+                                         String previousSnapshot, Path snapshotsDir, FileContentSource contentSource,
+                                         String fileName) throws IOException {
+        writer.append("# Changes Since Last Snapshot\n\n");
+        writer.append("Compared with `").append(previousSnapshot).append("`: ")
+                .append(String.valueOf(delta.getAdded().size())).append(" added, ")
+                .append(String.valueOf(delta.getModified().size())).append(" modified, ")
+                .append(String.valueOf(delta.getRemoved().size())).append(" removed, ")
+                .append(String.valueOf(delta.getUnchangedCount())).append(" unchanged.\n\n");
+        if (delta.isEmpty()) {
+            writer.append("No files changed.\n");
+            return delta.getManifest();
+        }
+
+        for (String filePath : delta.getAdded()) {
+            writer.append("- added: ").append(filePath).append("\n");
+        }
+        for (String filePath : delta.getModified()) {
+            writer.append("- modified: ").append(filePath).append("\n");
+        }
+        for (String filePath : delta.getRemoved()) {
+            writer.append("- removed: ").append(filePath).append("\n");
+        }
+        writer.append("\n");
+
+        SnapshotManifest manifest = delta.getManifest();
+        int prefixLength = basePath.replace('\\', '/').length() + 1;
+        List<String> changedFiles = new ArrayList<>(delta.getAdded());
+        changedFiles.addAll(delta.getModified());
+        for (int i = 0; i < changedFiles.size(); i++) {
+            progress.checkCanceled();
+            String filePath = changedFiles.get(i);
+            progress.setText("Writing changes (" + (i + 1) + "/" + changedFiles.size() + ")...");
+            progress.setText2(filePath);
+            progress.setFraction((double) i / changedFiles.size());
+
+            Path source = Paths.get(filePath);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(source, BasicFileAttributes.class);
+            } catch (IOException ex) {
+                writer.writeFileSection(filePath, source);
+                continue;
+            }
+            long size = attributes.size();
+            long modifiedTime = attributes.lastModifiedTime().toMillis();
+            FileBody body = contentSource == null ? null : contentSource.read(filePath, contentReader);
+            // Unsaved text doesn't match the file on disk, so its entry must not look unchanged next time
+            long recordedModified = body != null && contentSource.hasUnsavedChanges(filePath) ? -1 : modifiedTime;
+            if (body == null) {
+                body = renderCache.getBody(filePath, size, modifiedTime);
+            }
+            if (body == null) {
+                metrics.phase(SnapshotMetrics.READ).start().seen(1).read(contentReader.readableSize(size));
+                body = contentReader.read(source);
+                metrics.phase(SnapshotMetrics.READ).stop();
+            }
+
+            SnapshotManifest.Entry old = previous.get(filePath);
+            // Only complete bodies on both sides; a truncated or binary placeholder doesn't diff meaningfully
+            if (config.isDeltaAsDiff() && old != null && old.getHash() != null && body.getHash() != null) {
+                metrics.phase(SnapshotMetrics.RENDER).start();
+                String oldBody = SnapshotManifest.readBody(snapshotsDir, old);
+                // The old body was stored redacted, so the new one is compared in the same form. Headers use the
+                // project-relative path, like git hunks, so no local directory ends up in the snapshot
+                String diff = oldBody == null ? null
+                        : UnifiedDiff.diff(oldBody, writer.redact(filePath, body.getText()),
+                        filePath.substring(Math.min(prefixLength, filePath.length())), DIFF_MAX_EDITS);
+                metrics.phase(SnapshotMetrics.RENDER).stop();
+                if (diff != null && diff.isEmpty()) {
+                    // Only redacted text changed, so the stored body still reads the same
+                    manifest.put(new SnapshotManifest.Entry(filePath, size, recordedModified, body.getHash(),
+                            old.getSnapshot(), old.getOffset(), old.getLength()));
+                    continue;
+                }
+                if (diff != null) {
+                    // The new body isn't in any snapshot now, so a later delta falls back to the full body
+                    long position = writer.position();
+                    metrics.phase(SnapshotMetrics.WRITE).start().seen(1);
+                    writer.writeDiffSection(filePath, budget.fitDiff(diff, writer.getEstimatedTokens()));
+                    metrics.phase(SnapshotMetrics.WRITE).written(writer.position() - position).stop();
+                    manifest.put(new SnapshotManifest.Entry(filePath, size, recordedModified, body.getHash(), null, -1, 0));
+                    continue;
+                }
+            }
+
+            body = budget.fit(body, source, size, writer.getEstimatedTokens(), contentReader);
+            long position = writer.position();
+            metrics.phase(SnapshotMetrics.WRITE).start().seen(1);
+            FileSection section = writer.writeFileSection(filePath, source, body);
+            metrics.phase(SnapshotMetrics.WRITE).written(writer.position() - position).stop();
+            manifest.put(new SnapshotManifest.Entry(filePath, size, recordedModified, section.getHash(),
+                    fileName, section.getOffset(), section.getLength()));
+        }
+        return manifest;
+    }
+
+    private SnapshotManifest writeFiles(SnapshotWriter writer, String basePath, List<String> selectedFiles,
+                                        GitChanges gitDiffs, BodyRenderer bodyRenderer, FileContentSource contentSource,
+                                        String fileName) throws IOException {
+        SnapshotMetrics.Phase readPhase = metrics.phase(SnapshotMetrics.READ);
+        SnapshotMetrics.Phase renderPhase = metrics.phase(SnapshotMetrics.RENDER);
+        SnapshotMetrics.Phase writePhase = metrics.phase(SnapshotMetrics.WRITE);
+        int prefixLength = basePath.replace('\\', '/').length() + 1;
+
+        // Open editors, outlines and files unchanged since an earlier snapshot are not read ahead
+        progress.setText("Checking files...");
+        int fileCount = selectedFiles.size();
+        FileBody[] cachedBodies = new FileBody[fileCount];
+        boolean[] rendered = new boolean[fileCount];
+        boolean[] inMemory = new boolean[fileCount];
+        String[] diffs = new String[fileCount];
+        long[] sizes = new long[fileCount];
+        long[] modified = new long[fileCount];
+        List<String> filesToRead = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            progress.checkCanceled();
+            String filePath = selectedFiles.get(i);
+            modified[i] = -1;
+            readPhase.start();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class);
+                sizes[i] = attributes.size();
+                modified[i] = attributes.lastModifiedTime().toMillis();
+            } catch (IOException ignored) {
+                // Reported when the file itself is read
+            }
+            readPhase.stop();
+            // Tracked files in git diff mode are written as their hunks and never read
+            diffs[i] = gitDiffs == null ? null : gitDiffs.getDiff(filePath);
+            if (diffs[i] != null) {
+                continue;
+            }
+            // Outlines are rendered when their file is written, so they are never read ahead or held in memory
+            rendered[i] = bodyRenderer != null && bodyRenderer.accepts(filePath);
+            if (rendered[i]) {
+                continue;
+            }
+            // Open editors are taken from memory when their file is written, not decoded up front
+            inMemory[i] = contentSource != null && contentSource.holds(filePath);
+            if (inMemory[i]) {
+                continue;
+            }
+            renderPhase.start();
+            if (modified[i] >= 0) {
+                cachedBodies[i] = renderCache.getBody(filePath, sizes[i], modified[i]);
+            }
+            renderPhase.stop();
+            if (cachedBodies[i] == null) {
+                filesToRead.add(filePath);
+            } else {
+                renderPhase.seen(1);
+            }
+        }
+        readPhase.seen(filesToRead.size());
+
+        // Files are read ahead on a worker pool but written strictly in selection order
+        SnapshotManifest manifest = new SnapshotManifest();
+        try (ParallelFileReader reader = new ParallelFileReader(filesToRead, contentReader,
+                config.getReadConcurrency(), config.getReadBufferBytes(), progress::checkCanceled)) {
+            int nextToRead = 0;
+            for (int i = 0; i < fileCount; i++) {
+                progress.checkCanceled();
+                String filePath = selectedFiles.get(i);
+                progress.setText("Reading files (" + (i + 1) + "/" + fileCount + ")...");
+                progress.setText2(filePath);
+                progress.setFraction((double) i / fileCount);
+
+                long fileStart = System.nanoTime();
+                long position = writer.position();
+                if (diffs[i] != null) {
+                    writePhase.start().seen(1);
+                    writer.writeDiffSection(filePath, budget.fitDiff(diffs[i], writer.getEstimatedTokens()));
+                    writePhase.written(writer.position() - position).stop();
+                    metrics.addFile(filePath.substring(Math.min(prefixLength, filePath.length())),
+                            writer.position() - position, System.nanoTime() - fileStart);
+                    if (modified[i] >= 0) {
+                        // Listed so the next delta knows the file, but without a body; a change is written in full
+                        manifest.put(new SnapshotManifest.Entry(filePath, sizes[i], modified[i], null, null, -1, 0));
+                    }
+                    continue;
+                }
+
+                FileBody body = cachedBodies[i];
+                boolean unsaved = false;
+                if (inMemory[i]) {
+                    renderPhase.start();
+                    body = contentSource.read(filePath, contentReader);
+                    renderPhase.stop();
+                    if (body == null) {
+                        // Closed or changed on disk since it was checked, so it is read like any other file
+                        readPhase.start();
+                        body = contentReader.read(Paths.get(filePath));
+                        readPhase.seen(1).stop();
+                        readPhase.read(contentReader.readableSize(sizes[i]));
+                    } else {
+                        unsaved = contentSource.hasUnsavedChanges(filePath);
+                        readPhase.skipped("in memory", 1);
+                        renderPhase.seen(1);
+                    }
+                } else if (rendered[i]) {
+                    renderPhase.start();
+                    body = bodyRenderer.render(filePath);
+                    renderPhase.stop();
+                    if (body == null) {
+                        // Not something the renderer could outline after all
+                        rendered[i] = false;
+                        readPhase.start();
+                        body = contentReader.read(Paths.get(filePath));
+                        readPhase.seen(1).stop();
+                        readPhase.read(contentReader.readableSize(sizes[i]));
+                    } else {
+                        renderPhase.seen(1);
+                    }
+                } else if (body == null) {
+                    readPhase.start();
+                    body = reader.get(nextToRead++);
+                    readPhase.stop();
+                    readPhase.read(contentReader.readableSize(sizes[i]));
+                    if (body.getError() != null) {
+                        readPhase.skipped("read error", 1);
+                    } else if (body.getHash() == null && body.getText() != null
+                            && body.getText().startsWith(FileContentReader.BINARY_PLACEHOLDER)) {
+                        readPhase.skipped("binary content", 1);
+                    }
+                    if (modified[i] >= 0) {
+                        renderCache.putBody(filePath, sizes[i], modified[i], body);
+                    }
+                }
+
+                renderPhase.start();
+                int omitted = budget.getOmittedFiles();
+                int truncated = budget.getTruncatedFiles();
+                body = budget.fit(body, Paths.get(filePath), sizes[i], writer.getEstimatedTokens(), contentReader);
+                renderPhase.skipped("omitted for max_tokens", budget.getOmittedFiles() - omitted)
+                        .skipped("truncated for max_tokens", budget.getTruncatedFiles() - truncated)
+                        .stop();
+
+                writePhase.start().seen(1);
+                FileSection section = writer.writeFileSection(filePath, Paths.get(filePath), body);
+                writePhase.written(writer.position() - position).stop();
+                metrics.addFile(filePath.substring(Math.min(prefixLength, filePath.length())),
+                        writer.position() - position, System.nanoTime() - fileStart);
+                if (rendered[i] && modified[i] >= 0) {
+                    // No snapshot holds the full body, so the next delta writes this file in full
+                    manifest.put(new SnapshotManifest.Entry(filePath, sizes[i], modified[i], null, null, -1, 0));
+                } else if (modified[i] >= 0) {
+                    // Unsaved text doesn't match the file on disk, so its entry must not look unchanged next time
+                    manifest.put(new SnapshotManifest.Entry(filePath, sizes[i], unsaved ? -1 : modified[i],
+                            section.getHash(), fileName, section.getOffset(), section.getLength()));
+                }
+            }
+        }
+        return manifest;
+    }
+}
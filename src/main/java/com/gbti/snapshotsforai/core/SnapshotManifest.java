@@ -0,0 +1,193 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The files a snapshot covered, with size, modification time, content hash and the byte range
+ * of each body in the snapshot it was last written to. Delta snapshots compare against the
+ * most recent manifest and read previous bodies back through these ranges.
+ * <p>
+ * Manifests are stored as .snapshots/manifests/&lt;snapshot name&gt;.tsv.
+ */
+public final class SnapshotManifest {
+    public static final String DIRECTORY = "manifests";
+    private static final String HEADER = "# snapshots-for-ai manifest v1";
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public static Path pathFor(Path snapshotFile) {
+        String name = snapshotFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return snapshotFile.resolveSibling(DIRECTORY).resolve((dot > 0 ? name.substring(0, dot) : name) + ".tsv");
+    }
+
+    // The manifest of the newest snapshot that still exists; snapshot names sort chronologically
+    public static Path findLatest(Path snapshotsDir) throws IOException {
+        Path manifestsDir = snapshotsDir.resolve(DIRECTORY);
+        if (!Files.isDirectory(manifestsDir)) {
+            return null;
+        }
+        Path latest = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(manifestsDir, "snapshot-*.tsv")) {
+            for (Path manifest : stream) {
+                String name = manifest.getFileName().toString();
+                Path snapshot = snapshotsDir.resolve(name.substring(0, name.length() - ".tsv".length()) + ".md");
+                if (Files.exists(snapshot) && (latest == null || name.compareTo(latest.getFileName().toString()) > 0)) {
+                    latest = manifest;
+                }
+            }
+        }
+        return latest;
+    }
+
+    public static SnapshotManifest load(Path file) throws IOException {
+        SnapshotManifest manifest = new SnapshotManifest();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (!HEADER.equals(header)) {
+                throw new IOException("Unsupported snapshot manifest: " + file);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 7) {
+                    throw new IOException("Malformed snapshot manifest: " + file);
+                }
+                String path = FileIndex.unescape(fields[0]);
+                manifest.entries.put(path, new Entry(path, Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        fields[3].isEmpty() ? null : fields[3], fields[4].isEmpty() ? null : fields[4],
+                        Long.parseLong(fields[5]), Long.parseLong(fields[6])));
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("Malformed snapshot manifest: " + file, ex);
+        }
+        return manifest;
+    }
+
+    public void save(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Entry entry : entries.values()) {
+                writer.write(FileIndex.escape(entry.path));
+                writer.write('\t');
+                writer.write(Long.toString(entry.size));
+                writer.write('\t');
+                writer.write(Long.toString(entry.modified));
+                writer.write('\t');
+                writer.write(entry.hash == null ? "" : entry.hash);
+                writer.write('\t');
+                writer.write(entry.snapshot == null ? "" : entry.snapshot);
+                writer.write('\t');
+                writer.write(Long.toString(entry.offset));
+                writer.write('\t');
+                writer.write(Long.toString(entry.length));
+                writer.write('\n');
+            }
+        }
+    }
+
+    public void put(Entry entry) {
+        entries.put(entry.path, entry);
+    }
+
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    // Reads a previously written body back from its snapshot; null if that snapshot is gone or too short
+    public static String readBody(Path snapshotsDir, Entry entry) throws IOException {
+        if (entry.snapshot == null || entry.offset < 0 || entry.length > Integer.MAX_VALUE) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotsDir.resolve(entry.snapshot), StandardOpenOption.READ)) {
+            if (channel.size() < entry.offset + entry.length) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) entry.length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                    return null;
+                }
+            }
+            return new String(buffer.array(), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    public static final class Entry {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final String hash;
+        private final String snapshot;
+        private final long offset;
+        private final long length;
+
+        /**
+         * @param snapshot file name of the snapshot holding the body, or null if no snapshot has the full body
+         *                 (for example when the last delta only wrote a diff)
+         */
+        public Entry(String path, long size, long modified, String hash, String snapshot, long offset, long length) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.snapshot = snapshot;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getSnapshot() {
+            return snapshot;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.gbti.snapshotsforai.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Wall time, file counts and bytes for each phase of one snapshot, plus the time spent on the files
+ * of each directory. Written as an optional footer in the snapshot and as one line of
+ * {@code .snapshots/metrics.jsonl} per snapshot, so slow runs and regressions between plugin versions
+ * can be traced to a phase or a directory.
+ * <p>
+ * Phases are timed on the thread that builds the snapshot. File reads run ahead on a worker pool,
+ * so {@link #READ} is the time spent waiting for them; a file streamed from disk while it is written
+ * counts towards {@link #WRITE}.
+ */
+public final class SnapshotMetrics {
+    public static final String CONFIG = "config";
+    public static final String WALK = "walk";
+    public static final String FILTER = "filter";
+    public static final String STRUCTURE = "structure";
+    public static final String READ = "read";
+    public static final String RENDER = "render";
+    public static final String WRITE = "write";
+
+    // Directories are grouped this many levels deep, e.g. "vendor/symfony"
+    private static final int DIRECTORY_DEPTH = 2;
+    private static final int FOOTER_DIRECTORIES = 10;
+    private static final int LOG_DIRECTORIES = 25;
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, Directory> directories = new HashMap<>();
+    private int redactions;
+
+    public SnapshotMetrics() {
+        for (String name : new String[]{CONFIG, WALK, FILTER, STRUCTURE, READ, RENDER, WRITE}) {
+            phases.put(name, new Phase(name));
+        }
+    }
+
+    public Phase phase(String name) {
+        return phases.computeIfAbsent(name, Phase::new);
+    }
+
+    // relativePath is the file's path relative to the project directory
+    public void addFile(String relativePath, long bytes, long nanos) {
+        String[] segments = relativePath.split("/");
+        int depth = Math.min(DIRECTORY_DEPTH, segments.length - 1);
+        String key = depth == 0 ? "." : String.join("/", List.of(segments).subList(0, depth));
+        Directory directory = directories.computeIfAbsent(key, Directory::new);
+        directory.files++;
+        directory.bytes += bytes;
+        directory.nanos += nanos;
+    }
+
+    public int getRedactions() {
+        return redactions;
+    }
+
+    public void setRedactions(int redactions) {
+        this.redactions = redactions;
+    }
+
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    public void writeFooter(Appendable out) throws IOException {
+        out.append("# Snapshot Stats\n\n");
+        out.append("Generated in ").append(String.valueOf(getElapsedMillis())).append(" ms");
+        if (redactions > 0) {
+            out.append(", ").append(String.valueOf(redactions)).append(" secret(s) redacted");
+        }
+        out.append(".\n\n");
+        out.append("| Phase | Time (ms) | Files | Skipped | Read | Written |\n");
+        out.append("|---|---:|---:|---|---:|---:|\n");
+        for (Phase phase : phases.values()) {
+            out.append("| ").append(phase.name)
+                    .append(" | ").append(String.valueOf(phase.getMillis()))
+                    .append(" | ").append(String.valueOf(phase.filesSeen))
+                    .append(" | ").append(formatSkipped(phase.skipped))
+                    .append(" | ").append(formatBytes(phase.bytesRead))
+                    .append(" | ").append(formatBytes(phase.bytesWritten))
+                    .append(" |\n");
+        }
+
+        List<Directory> slowest = slowestDirectories(FOOTER_DIRECTORIES);
+        if (!slowest.isEmpty()) {
+            out.append("\n| Directory | Time (ms) | Files | Bytes |\n");
+            out.append("|---|---:|---:|---:|\n");
+            for (Directory directory : slowest) {
+                out.append("| ").append(directory.path)
+                        .append(" | ").append(String.valueOf(directory.nanos / 1_000_000))
+                        .append(" | ").append(String.valueOf(directory.files))
+                        .append(" | ").append(formatBytes(directory.bytes))
+                        .append(" |\n");
+            }
+        }
+        out.append("\n");
+    }
+
+    /**
+     * Appends one JSON line describing this snapshot. {@code pluginVersion} lets lines from
+     * different releases be compared.
+     */
+    public void appendTo(Path metricsLog, String snapshotFile, String mode, String pluginVersion,
+                         long estimatedTokens) throws IOException {
+        JSONObject line = new JSONObject();
+        line.put("time", OffsetDateTime.now().toString());
+        line.put("snapshot", snapshotFile);
+        line.put("mode", mode);
+        line.put("plugin_version", pluginVersion);
+        line.put("total_ms", getElapsedMillis());
+        line.put("estimated_tokens", estimatedTokens);
+        line.put("redactions", redactions);
+
+        JSONArray phaseArray = new JSONArray();
+        for (Phase phase : phases.values()) {
+            JSONObject json = new JSONObject();
+            json.put("name", phase.name);
+            json.put("ms", phase.getMillis());
+            json.put("files_seen", phase.filesSeen);
+            json.put("files_skipped", new JSONObject(phase.skipped));
+            json.put("bytes_read", phase.bytesRead);
+            json.put("bytes_written", phase.bytesWritten);
+            phaseArray.put(json);
+        }
+        line.put("phases", phaseArray);
+
+        JSONArray directoryArray = new JSONArray();
+        for (Directory directory : slowestDirectories(LOG_DIRECTORIES)) {
+            JSONObject json = new JSONObject();
+            json.put("path", directory.path);
+            json.put("ms", directory.nanos / 1_000_000);
+            json.put("files", directory.files);
+            json.put("bytes", directory.bytes);
+            directoryArray.put(json);
+        }
+        line.put("directories", directoryArray);
+
+        Files.writeString(metricsLog, line + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    }
+
+    private List<Directory> slowestDirectories(int limit) {
+        List<Directory> sorted = new ArrayList<>(directories.values());
+        sorted.sort((a, b) -> b.nanos != a.nanos ? Long.compare(b.nanos, a.nanos) : a.path.compareTo(b.path));
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    private static String formatSkipped(Map<String, Integer> skipped) {
+        if (skipped.isEmpty()) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : skipped.entrySet()) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(entry.getValue()).append(' ').append(entry.getKey());
+        }
+        return text.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    public static final class Phase {
+        private final String name;
+        private final Map<String, Integer> skipped = new LinkedHashMap<>();
+        private long nanos;
+        private long startedAt;
+        private int filesSeen;
+        private long bytesRead;
+        private long bytesWritten;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        // Phases can be started and stopped repeatedly; the time adds up
+        public Phase start() {
+            startedAt = System.nanoTime();
+            return this;
+        }
+
+        public Phase stop() {
+            nanos += System.nanoTime() - startedAt;
+            return this;
+        }
+
+        // For time measured before the metrics existed, such as loading the config
+        public Phase add(long elapsedNanos) {
+            nanos += elapsedNanos;
+            return this;
+        }
+
+        public Phase seen(int files) {
+            filesSeen += files;
+            return this;
+        }
+
+        public Phase skipped(String reason, int files) {
+            if (files > 0) {
+                skipped.merge(reason, files, Integer::sum);
+            }
+            return this;
+        }
+
+        public Phase read(long bytes) {
+            bytesRead += bytes;
+            return this;
+        }
+
+        public Phase written(long bytes) {
+            bytesWritten += bytes;
+            return this;
+        }
+
+        public long getMillis() {
+            return nanos / 1_000_000;
+        }
+    }
+
+    private static final class Directory {
+        final String path;
+        int files;
+        long bytes;
+        long nanos;
+
+        Directory(String path) {
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Moves old snapshots out of .snapshots once there are more than {@code retention_keep_snapshots},
+ * they are older than {@code retention_max_age_days} or together exceed {@code retention_max_total_mb}.
+ * Each one is zipped with its manifest into {@code .snapshots/archive}, or deleted if archiving is off.
+ * <p>
+ * The newest snapshot and every snapshot its manifest still reads bodies from are always kept, so
+ * the next changes-only snapshot can diff against them. Other files in .snapshots are never touched.
+ */
+public final class SnapshotRetention {
+    public static final String ARCHIVE_DIRECTORY = "archive";
+
+    private final int keepSnapshots;
+    private final int maxAgeDays;
+    private final long maxTotalBytes;
+    private final boolean archive;
+
+    // A limit of 0 disables it
+    public SnapshotRetention(int keepSnapshots, int maxAgeDays, long maxTotalBytes, boolean archive) {
+        this.keepSnapshots = keepSnapshots;
+        this.maxAgeDays = maxAgeDays;
+        this.maxTotalBytes = maxTotalBytes;
+        this.archive = archive;
+    }
+
+    public boolean isEnabled() {
+        return keepSnapshots > 0 || maxAgeDays > 0 || maxTotalBytes > 0;
+    }
+
+    /**
+     * The snapshots that fall outside the limits, oldest first. Snapshots are counted and their sizes
+     * added up from the newest, so the newest ones are kept when a limit is reached.
+     */
+    public List<Path> select(Path snapshotsDir, long nowMillis) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(snapshotsDir, "snapshot-*.md")) {
+            for (Path snapshot : stream) {
+                snapshots.add(snapshot);
+            }
+        }
+        // Snapshot names sort chronologically; newest first
+        snapshots.sort((a, b) -> b.getFileName().toString().compareTo(a.getFileName().toString()));
+
+        Set<String> protectedNames = referencedSnapshots(snapshotsDir);
+        long maxAgeMillis = TimeUnit.DAYS.toMillis(maxAgeDays);
+        List<Path> expired = new ArrayList<>();
+        int kept = 0;
+        long keptBytes = 0;
+        for (int i = 0; i < snapshots.size(); i++) {
+            Path snapshot = snapshots.get(i);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(snapshot, BasicFileAttributes.class);
+            } catch (IOException ex) {
+                continue;
+            }
+            long bytes = attributes.size();
+            boolean keep = i == 0 || protectedNames.contains(snapshot.getFileName().toString())
+                    || ((keepSnapshots <= 0 || kept < keepSnapshots)
+                    && (maxAgeDays <= 0 || nowMillis - attributes.lastModifiedTime().toMillis() <= maxAgeMillis)
+                    && (maxTotalBytes <= 0 || keptBytes + bytes <= maxTotalBytes));
+            if (keep) {
+                kept++;
+                keptBytes += bytes;
+            } else {
+                expired.add(0, snapshot);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Archives or deletes the snapshots {@link #select} returns, together with their manifests, oldest
+     * first. A snapshot is only deleted after its archive was written; on an error it and every newer
+     * one stay in place.
+     *
+     * @return the number of snapshots moved out of .snapshots
+     */
+    public int apply(Path snapshotsDir, Runnable checkCanceled) throws IOException {
+        if (!isEnabled() || !Files.isDirectory(snapshotsDir)) {
+            return 0;
+        }
+        int removed = 0;
+        for (Path snapshot : select(snapshotsDir, System.currentTimeMillis())) {
+            checkCanceled.run();
+            Path manifest = SnapshotManifest.pathFor(snapshot);
+            if (archive) {
+                archive(snapshotsDir.resolve(ARCHIVE_DIRECTORY), snapshot, manifest);
+            }
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(manifest);
+            removed++;
+        }
+        return removed;
+    }
+
+    // Entries mirror the layout of .snapshots, so unzipping the archive there restores the snapshot
+    private static void archive(Path archiveDir, Path snapshot, Path manifest) throws IOException {
+        Files.createDirectories(archiveDir);
+        String name = snapshot.getFileName().toString();
+        Path archiveFile = archiveDir.resolve(name.substring(0, name.length() - ".md".length()) + ".zip");
+        Path tempFile = archiveDir.resolve(archiveFile.getFileName() + ".tmp");
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(tempFile))) {
+                addEntry(zip, name, snapshot);
+                if (Files.exists(manifest)) {
+                    addEntry(zip, SnapshotManifest.DIRECTORY + "/" + manifest.getFileName(), manifest);
+                }
+            }
+            Files.move(tempFile, archiveFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void addEntry(ZipOutputStream zip, String entryName, Path file) throws IOException {
+        ZipEntry entry = new ZipEntry(entryName);
+        entry.setLastModifiedTime(Files.getLastModifiedTime(file));
+        zip.putNextEntry(entry);
+        Files.copy(file, zip);
+        zip.closeEntry();
+    }
+
+    // Snapshots the newest manifest takes unchanged bodies from; an unreadable manifest protects nothing extra
+    private static Set<String> referencedSnapshots(Path snapshotsDir) {
+        Set<String> names = new HashSet<>();
+        try {
+            Path latest = SnapshotManifest.findLatest(snapshotsDir);
+            if (latest != null) {
+                for (SnapshotManifest.Entry entry : SnapshotManifest.load(latest).getEntries()) {
+                    if (entry.getSnapshot() != null) {
+                        names.add(entry.getSnapshot());
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+            // The newest snapshot is still kept
+        }
+        return names;
+    }
+}
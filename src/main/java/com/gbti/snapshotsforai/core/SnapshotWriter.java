@@ -0,0 +1,228 @@
+package com.gbti.snapshotsforai.core;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams a snapshot straight to disk through a buffered channel so memory stays bounded
+ * by the buffer sizes rather than by the size of the snapshot. File bodies and diffs pass
+ * through the {@link SecretRedactor} on the way, if there is one.
+ */
+public final class SnapshotWriter implements Appendable, Closeable {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final ByteCountingWriter out;
+    private final FileContentReader contentReader;
+    private final SecretRedactor redactor;
+    private int redactions;
+
+    /**
+     * @param redactor applied to every file body and diff, or null to write them unchanged
+     */
+    public SnapshotWriter(Path target, FileContentReader contentReader, SecretRedactor redactor) throws IOException {
+        this.contentReader = contentReader;
+        this.redactor = redactor;
+        FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.out = new ByteCountingWriter(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1), WRITE_BUFFER_SIZE));
+    }
+
+    // Number of UTF-8 bytes written so far, i.e. the file offset the next character lands at
+    public long position() {
+        return out.position();
+    }
+
+    public long getEstimatedTokens() {
+        return out.tokens.getTokens();
+    }
+
+    // Number of secrets replaced with placeholders so far
+    public int getRedactions() {
+        return redactions;
+    }
+
+    // The text as it would be written for the file, so it can be compared with bodies already in a snapshot
+    public String redact(String filePath, String text) {
+        return redactor == null ? text : redactor.redact(filePath, text);
+    }
+
+    @Override
+    public SnapshotWriter append(CharSequence text) throws IOException {
+        out.append(text);
+        return this;
+    }
+
+    @Override
+    public SnapshotWriter append(CharSequence text, int start, int end) throws IOException {
+        out.append(text, start, end);
+        return this;
+    }
+
+    @Override
+    public SnapshotWriter append(char c) throws IOException {
+        out.append(c);
+        return this;
+    }
+
+    public FileSection writeFileSection(String filePath, Path source) throws IOException {
+        return writeFileSection(filePath, source, FileBody.deferred());
+    }
+
+    /**
+     * Writes a body that was read ahead of time, or streams it from disk if it was deferred.
+     * The result records where the body landed in the snapshot and the content hash of the
+     * file if it was read completely.
+     */
+    public FileSection writeFileSection(String filePath, Path source, FileBody body) throws IOException {
+        String hash = null;
+        out.append("## ").append(filePath).append("\n```\n");
+        long offset = out.position();
+        if (body.isDeferred()) {
+            Writer bodyOut = openBody(filePath, false);
+            IOException error = null;
+            try {
+                hash = contentReader.transfer(source, bodyOut);
+            } catch (IOException ex) {
+                error = ex;
+            }
+            closeBody(bodyOut);
+            if (error != null) {
+                writeError(filePath, error);
+            }
+        } else if (body.getError() != null) {
+            writeError(filePath, body.getError());
+        } else {
+            Writer bodyOut = openBody(filePath, false);
+            bodyOut.append(body.getText());
+            closeBody(bodyOut);
+            hash = body.getHash();
+        }
+        long length = out.position() - offset;
+        out.append("```\n\n");
+        return new FileSection(hash, offset, length);
+    }
+
+    public void writeDiffSection(String filePath, String diff) throws IOException {
+        out.append("## ").append(filePath).append("\n```diff\n");
+        Writer bodyOut = openBody(filePath, true);
+        bodyOut.append(diff);
+        closeBody(bodyOut);
+        out.append("```\n\n");
+    }
+
+    private Writer openBody(String filePath, boolean diff) {
+        return redactor == null ? out : redactor.open(out, filePath, diff);
+    }
+
+    // Writes out a last line that has no line break
+    private void closeBody(Writer bodyOut) throws IOException {
+        if (bodyOut instanceof SecretRedactor.RedactingWriter) {
+            SecretRedactor.RedactingWriter redacting = (SecretRedactor.RedactingWriter) bodyOut;
+            redacting.finish();
+            redactions += redacting.getRedactions();
+        }
+    }
+
+    private void writeError(String filePath, IOException ex) throws IOException {
+        out.append("Error reading file: ").append(filePath).append(" - ").append(String.valueOf(ex.getMessage())).append("\n");
+        for (StackTraceElement element : ex.getStackTrace()) {
+            out.append(element.toString()).append("\n");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Counts the UTF-8 encoded length of everything passing through, matching the encoder
+     * below it, which replaces an unpaired surrogate with a single '?', and estimates its tokens.
+     */
+    private static final class ByteCountingWriter extends Writer {
+        private final Writer out;
+        private final TokenEstimator tokens = new TokenEstimator();
+        private long position;
+        private boolean pendingHighSurrogate;
+
+        ByteCountingWriter(Writer out) {
+            this.out = out;
+        }
+
+        long position() {
+            return pendingHighSurrogate ? position + 1 : position;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            count((char) c);
+            out.write(c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                count(buffer[i]);
+            }
+            out.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                count(text.charAt(i));
+            }
+            out.write(text, offset, length);
+        }
+
+        @Override
+        public Writer append(CharSequence text) throws IOException {
+            String value = String.valueOf(text);
+            write(value, 0, value.length());
+            return this;
+        }
+
+        private void count(char c) {
+            tokens.add(c);
+            if (pendingHighSurrogate) {
+                pendingHighSurrogate = false;
+                if (Character.isLowSurrogate(c)) {
+                    position += 4;
+                    return;
+                }
+                position++;
+            }
+            if (c < 0x80) {
+                position++;
+            } else if (c < 0x800) {
+                position += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                pendingHighSurrogate = true;
+            } else if (Character.isLowSurrogate(c)) {
+                position++;
+            } else {
+                position += 3;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.gbti.snapshotsforai.core;
+
+import java.nio.file.Path;
+
+/**
+ * Keeps a snapshot within {@code max_tokens}. Each file body is checked against what is left
+ * before it is written: bodies that fit are written unchanged, a body that doesn't fit is cut
+ * at a line boundary while there is a useful amount of budget left, and after that files are
+ * reduced to a one-line note with their estimated size.
+ */
+public final class TokenBudget {
+    // Tokens for the "## path" header and the fence around a body
+    private static final long SECTION_TOKENS = 16;
+    // Below this, a truncated body isn't worth including and the file is only noted
+    private static final long MIN_TRUNCATED_TOKENS = 256;
+
+    private final long maxTokens;
+    private int truncatedFiles;
+    private int omittedFiles;
+
+    public TokenBudget(long maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    public boolean isLimited() {
+        return maxTokens > 0;
+    }
+
+    public long getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * Returns the body to write for a file given the tokens already written. Deferred bodies are
+     * judged by file size and only read here if they have to be cut.
+     */
+    public FileBody fit(FileBody body, Path source, long size, long usedTokens, FileContentReader contentReader) {
+        if (!isLimited() || body.getError() != null) {
+            return body;
+        }
+        long remaining = maxTokens - usedTokens - SECTION_TOKENS;
+        long estimate = body.isDeferred() ? TokenEstimator.estimateFromBytes(size) : TokenEstimator.estimate(body.getText());
+        if (estimate <= remaining) {
+            return body;
+        }
+        if (remaining < MIN_TRUNCATED_TOKENS) {
+            omittedFiles++;
+            return FileBody.text("Omitted to stay within max_tokens (about " + estimate + " tokens).\n", null);
+        }
+
+        if (body.isDeferred()) {
+            body = contentReader.read(source);
+            if (body.getError() != null) {
+                return body;
+            }
+        }
+        truncatedFiles++;
+        String marker = "... truncated to stay within max_tokens (about " + estimate + " tokens in full)\n";
+        String text = truncate(body.getText(), remaining - TokenEstimator.estimate(marker));
+        return FileBody.text(text + marker, null);
+    }
+
+    public String fitDiff(String diff, long usedTokens) {
+        if (!isLimited()) {
+            return diff;
+        }
+        FileBody body = fit(FileBody.text(diff, null), null, diff.length(), usedTokens, null);
+        return body.getText();
+    }
+
+    public int getTruncatedFiles() {
+        return truncatedFiles;
+    }
+
+    public int getOmittedFiles() {
+        return omittedFiles;
+    }
+
+    // The longest prefix made of whole lines whose estimate stays within maxTokens
+    static String truncate(String text, long maxTokens) {
+        TokenEstimator estimator = new TokenEstimator();
+        int end = 0;
+        for (int i = 0; i < text.length(); i++) {
+            estimator.add(text.charAt(i));
+            if (estimator.getTokens() > maxTokens) {
+                break;
+            }
+            if (text.charAt(i) == '\n') {
+                end = i + 1;
+            }
+        }
+        return text.substring(0, end);
+    }
+}
@@ -0,0 +1,86 @@
+package com.gbti.snapshotsforai.core;
+
+/**
+ * Approximates the number of LLM tokens in a stream of text without a tokenizer. Runs of
+ * letters, digits and blanks are priced by length the way BPE vocabularies tend to split
+ * them, punctuation and line breaks count one token each and other non-ASCII characters
+ * count one each. Characters are fed one at a time so it can sit under a writer without
+ * allocating; the result is an estimate that errs on the high side for code.
+ */
+public final class TokenEstimator {
+    // Rough bytes per token of source code, for files that haven't been read yet
+    public static final int BYTES_PER_TOKEN = 4;
+
+    private static final int NONE = 0;
+    private static final int WORD = 1;
+    private static final int DIGITS = 2;
+    private static final int BLANKS = 3;
+
+    private long tokens;
+    private int run = NONE;
+    private int runLength;
+
+    public static long estimate(CharSequence text) {
+        TokenEstimator estimator = new TokenEstimator();
+        estimator.add(text, 0, text.length());
+        return estimator.getTokens();
+    }
+
+    public static long estimateFromBytes(long bytes) {
+        return (bytes + BYTES_PER_TOKEN - 1) / BYTES_PER_TOKEN;
+    }
+
+    public void add(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            add(text.charAt(i));
+        }
+    }
+
+    public void add(char c) {
+        int type;
+        if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_') {
+            type = WORD;
+        } else if (c >= '0' && c <= '9') {
+            type = DIGITS;
+        } else if (c == ' ' || c == '\t') {
+            type = BLANKS;
+        } else {
+            closeRun();
+            // Line breaks, punctuation and anything outside ASCII; a surrogate pair counts once
+            if (!Character.isLowSurrogate(c)) {
+                tokens++;
+            }
+            return;
+        }
+        if (type != run) {
+            closeRun();
+            run = type;
+        }
+        runLength++;
+    }
+
+    // Includes the run in progress, so it can be read at any point of the stream
+    public long getTokens() {
+        return tokens + runCost();
+    }
+
+    private void closeRun() {
+        tokens += runCost();
+        run = NONE;
+        runLength = 0;
+    }
+
+    private long runCost() {
+        switch (run) {
+            case WORD:
+                return (runLength + 3) / 4;
+            case DIGITS:
+                return (runLength + 2) / 3;
+            case BLANKS:
+                // Single spaces merge into the next word; indentation costs about one token per four
+                return runLength / 4;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.gbti.snapshotsforai.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line-based unified diff using Myers' O(ND) algorithm. Texts are expected to be normalized to
+ * '\n' line endings with a trailing newline, as snapshot bodies are.
+ */
+public final class UnifiedDiff {
+    private static final int CONTEXT_LINES = 3;
+
+    private static final int EQUAL = 0;
+    private static final int DELETE = 1;
+    private static final int INSERT = 2;
+
+    private UnifiedDiff() {
+    }
+
+    /**
+     * Returns the diff of the two texts with {@code a/} and {@code b/} headers, an empty string if they
+     * are equal, or null if they differ in more than {@code maxEdits} lines, in which case the new body
+     * is more useful than the diff and is also cheaper to produce.
+     */
+    public static String diff(String oldText, String newText, String path, int maxEdits) {
+        String[] oldLines = splitLines(oldText);
+        String[] newLines = splitLines(newText);
+
+        // Lines are compared as ints; equal lines share an id
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = toIds(oldLines, ids);
+        int[] b = toIds(newLines, ids);
+
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+        if (prefix == a.length && prefix == b.length) {
+            return "";
+        }
+
+        int[] ops = shortestEdit(a, prefix, a.length - suffix, b, prefix, b.length - suffix, maxEdits);
+        if (ops == null) {
+            return null;
+        }
+
+        int[] script = new int[prefix + ops.length + suffix];
+        System.arraycopy(ops, 0, script, prefix, ops.length);
+        return format(script, oldLines, newLines, path);
+    }
+
+    /**
+     * Returns the edit script for a[aStart, aEnd) -> b[bStart, bEnd) as EQUAL/DELETE/INSERT steps.
+     * Only the diagonal band reached at each edit distance is kept for backtracking, so memory
+     * grows with the square of the number of edits, not with the file size.
+     */
+    private static int[] shortestEdit(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd, int maxEdits) {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int max = n + m;
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+
+        int distance = -1;
+        for (int d = 0; d <= max && distance < 0; d++) {
+            if (d > maxEdits) {
+                return null;
+            }
+            // Keep v[-d-1 .. d+1], which is all that step d reads from step d-1
+            int[] band = new int[2 * d + 3];
+            System.arraycopy(v, offset - d - 1, band, 0, band.length);
+            trace.add(band);
+
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && v[offset + k - 1] < v[offset + k + 1]
+                        ? v[offset + k + 1]
+                        : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aStart + x] == b[bStart + y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    distance = d;
+                    break;
+                }
+            }
+        }
+
+        // Walk back from (n, m), collecting steps in reverse
+        int[] reversed = new int[n + m];
+        int count = 0;
+        int x = n;
+        int y = m;
+        for (int d = distance; d >= 0; d--) {
+            int[] band = trace.get(d);
+            int bandOffset = d + 1;
+            int k = x - y;
+            int previousK = k == -d || k != d && band[bandOffset + k - 1] < band[bandOffset + k + 1] ? k + 1 : k - 1;
+            int previousX = d == 0 ? 0 : band[bandOffset + previousK];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                reversed[count++] = EQUAL;
+                x--;
+                y--;
+            }
+            if (d > 0) {
+                if (x == previousX) {
+                    reversed[count++] = INSERT;
+                    y--;
+                } else {
+                    reversed[count++] = DELETE;
+                    x--;
+                }
+            }
+        }
+
+        int[] ops = new int[count];
+        for (int i = 0; i < count; i++) {
+            ops[i] = reversed[count - 1 - i];
+        }
+        return ops;
+    }
+
+    private static String format(int[] script, String[] oldLines, String[] newLines, String path) {
+        StringBuilder out = new StringBuilder();
+        out.append("--- a/").append(path).append('\n');
+        out.append("+++ b/").append(path).append('\n');
+
+        // Old and new line numbers at the start of every step
+        int[] oldAt = new int[script.length + 1];
+        int[] newAt = new int[script.length + 1];
+        for (int i = 0; i < script.length; i++) {
+            oldAt[i + 1] = oldAt[i] + (script[i] == INSERT ? 0 : 1);
+            newAt[i + 1] = newAt[i] + (script[i] == DELETE ? 0 : 1);
+        }
+
+        int i = 0;
+        while (i < script.length) {
+            if (script[i] == EQUAL) {
+                i++;
+                continue;
+            }
+            // Grow the hunk while the next change is within two context windows
+            int start = Math.max(0, i - CONTEXT_LINES);
+            int end = i;
+            int equalRun = 0;
+            for (int j = i; j < script.length; j++) {
+                if (script[j] == EQUAL) {
+                    equalRun++;
+                    if (equalRun > 2 * CONTEXT_LINES) {
+                        break;
+                    }
+                } else {
+                    equalRun = 0;
+                    end = j + 1;
+                }
+            }
+            end = Math.min(script.length, end + CONTEXT_LINES);
+
+            int oldCount = oldAt[end] - oldAt[start];
+            int newCount = newAt[end] - newAt[start];
+            out.append("@@ -").append(oldCount == 0 ? oldAt[start] : oldAt[start] + 1).append(',').append(oldCount)
+                    .append(" +").append(newCount == 0 ? newAt[start] : newAt[start] + 1).append(',').append(newCount)
+                    .append(" @@\n");
+            for (int j = start; j < end; j++) {
+                if (script[j] == EQUAL) {
+                    out.append(' ').append(oldLines[oldAt[j]]);
+                } else if (script[j] == DELETE) {
+                    out.append('-').append(oldLines[oldAt[j]]);
+                } else {
+                    out.append('+').append(newLines[newAt[j]]);
+                }
+                out.append('\n');
+            }
+            i = end;
+        }
+        return out.toString();
+    }
+
+    private static String[] splitLines(String text) {
+        if (text.isEmpty()) {
+            return new String[0];
+        }
+        String[] lines = text.split("\n", -1);
+        if (text.endsWith("\n")) {
+            String[] trimmed = new String[lines.length - 1];
+            System.arraycopy(lines, 0, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return lines;
+    }
+
+    private static int[] toIds(String[] lines, Map<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            Integer id = ids.get(lines[i]);
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines[i], id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+}
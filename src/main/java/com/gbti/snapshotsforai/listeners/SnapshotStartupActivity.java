@@ -1,6 +1,7 @@
 package com.gbti.snapshotsforai.listeners;
 
 import com.gbti.snapshotsforai.services.SnapshotService;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupActivity;
@@ -15,15 +16,31 @@ public class SnapshotStartupActivity implements StartupActivity {
     public void runActivity(@NotNull Project project) {
         LOG.info("SnapshotStartupActivity is running for project: " + project.getName());
 
-        SnapshotService snapshotService = project.getService(SnapshotService.class);
-        try {
-            LOG.info("Initializing snapshot directory");
-            snapshotService.initializeSnapshotDirectory();
-            LOG.info("Snapshot directory initialized successfully");
-        } catch (IOException e) {
-            LOG.error("Error initializing snapshot directory", e);
-        } catch (Exception e) {
-            LOG.error("Unexpected error during snapshot initialization", e);
-        }
+        // Keep disk I/O off the project-open path
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            if (project.isDisposed()) {
+                return;
+            }
+
+            SnapshotService snapshotService = project.getService(SnapshotService.class);
+            try {
+                LOG.info("Initializing snapshot directory");
+                snapshotService.initializeSnapshotDirectory();
+                LOG.info("Snapshot directory initialized successfully");
+            } catch (IOException e) {
+                LOG.error("Error initializing snapshot directory", e);
+                return;
+            } catch (Exception e) {
+                LOG.error("Unexpected error during snapshot initialization", e);
+                return;
+            }
+
+            // Warm the config cache and the file index so the first snapshot can start writing right away
+            try {
+                snapshotService.loadFileIndex();
+            } catch (IOException e) {
+                LOG.warn("Snapshot config could not be loaded: " + e.getMessage());
+            }
+        });
     }
-}
\ No newline at end of file
+}
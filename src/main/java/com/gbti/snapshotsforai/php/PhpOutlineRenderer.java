@@ -0,0 +1,238 @@
+package com.gbti.snapshotsforai.php;
+
+import com.gbti.snapshotsforai.core.BodyRenderer;
+import com.gbti.snapshotsforai.core.FileBody;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.jetbrains.php.lang.PhpFileType;
+import com.jetbrains.php.lang.psi.PhpFile;
+import com.jetbrains.php.lang.psi.elements.Constant;
+import com.jetbrains.php.lang.psi.elements.Field;
+import com.jetbrains.php.lang.psi.elements.Function;
+import com.jetbrains.php.lang.psi.elements.Method;
+import com.jetbrains.php.lang.psi.elements.Parameter;
+import com.jetbrains.php.lang.psi.elements.PhpClass;
+import com.jetbrains.php.lang.psi.elements.PhpModifier;
+import com.jetbrains.php.lang.psi.elements.PhpNamedElement;
+import com.jetbrains.php.lang.psi.resolve.types.PhpType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Renders PHP files as an outline: namespaces, class, interface, trait and enum declarations with
+ * their parents, constants and method signatures, without any function bodies. Everything is read
+ * through stub-backed PSI accessors, so the outline comes from the PHP plugin's stub index and the
+ * files are not parsed. Types are written fully qualified, which makes {@code use} imports unnecessary.
+ */
+public final class PhpOutlineRenderer implements BodyRenderer {
+    private static final String INDENT = "    ";
+
+    // Stubs don't keep source order across declarations of different kinds, so the outline is sorted
+    private static final Comparator<PhpNamedElement> DECLARATION_ORDER =
+            Comparator.comparing(PhpNamedElement::getNamespaceName)
+                    .thenComparing(PhpOutlineRenderer::kindOrder)
+                    .thenComparing(PhpNamedElement::getFQN);
+
+    private final Project project;
+    private final Set<String> fullBodyFiles;
+
+    /**
+     * @param fullBodyFiles files that keep their full contents, such as the ones open in the editor
+     */
+    public PhpOutlineRenderer(Project project, Set<String> fullBodyFiles) {
+        this.project = project;
+        this.fullBodyFiles = fullBodyFiles;
+    }
+
+    @Override
+    public boolean accepts(String filePath) {
+        return !fullBodyFiles.contains(filePath)
+                && FileTypeRegistry.getInstance().getFileTypeByFileName(filePath.substring(filePath.lastIndexOf('/') + 1))
+                == PhpFileType.INSTANCE;
+    }
+
+    @Override
+    public FileBody render(String filePath) {
+        if (!accepts(filePath)) {
+            return null;
+        }
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
+        if (file == null) {
+            return null;
+        }
+
+        // Waits for indexing to finish so the stubs are available instead of falling back to parsing
+        String outline = ReadAction.nonBlocking(() -> renderInReadAction(file))
+                .inSmartMode(project)
+                .executeSynchronously();
+        return outline == null ? null : FileBody.text(outline, null);
+    }
+
+    private String renderInReadAction(VirtualFile file) {
+        if (project.isDisposed() || !file.isValid()) {
+            return null;
+        }
+        PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+        if (!(psiFile instanceof PhpFile)) {
+            return null;
+        }
+
+        List<PhpNamedElement> declarations = new ArrayList<>();
+        for (PhpNamedElement element : ((PhpFile) psiFile).getTopLevelDefs().values()) {
+            if (element instanceof PhpClass && !((PhpClass) element).isAnonymous()
+                    || element instanceof Function && !((Function) element).isClosure()
+                    || element instanceof Constant) {
+                declarations.add(element);
+            }
+        }
+        declarations.sort(DECLARATION_ORDER);
+
+        StringBuilder out = new StringBuilder("<?php\n");
+        String namespace = "\\";
+        for (PhpNamedElement element : declarations) {
+            if (!element.getNamespaceName().equals(namespace)) {
+                namespace = element.getNamespaceName();
+                if (!trimSlashes(namespace).isEmpty()) {
+                    out.append("\nnamespace ").append(trimSlashes(namespace)).append(";\n");
+                }
+            }
+            if (element instanceof PhpClass) {
+                appendClass((PhpClass) element, out);
+            } else if (element instanceof Function) {
+                out.append("\n").append(signature((Function) element)).append(";\n");
+            } else {
+                out.append("const ").append(element.getName()).append(";\n");
+            }
+        }
+        return out.toString();
+    }
+
+    private void appendClass(PhpClass phpClass, StringBuilder out) {
+        out.append("\n");
+        if (phpClass.isAbstract() && !phpClass.isInterface()) {
+            out.append("abstract ");
+        }
+        if (phpClass.isFinal()) {
+            out.append("final ");
+        }
+        out.append(phpClass.isInterface() ? "interface " : phpClass.isTrait() ? "trait " : phpClass.isEnum() ? "enum " : "class ")
+                .append(phpClass.getName());
+        if (phpClass.isInterface()) {
+            appendNames(" extends ", phpClass.getInterfaceNames(), out);
+        } else {
+            if (phpClass.getSuperFQN() != null) {
+                out.append(" extends ").append(phpClass.getSuperFQN());
+            }
+            appendNames(" implements ", phpClass.getInterfaceNames(), out);
+        }
+        out.append("\n{\n");
+
+        if (phpClass.getTraitNames().length > 0) {
+            out.append(INDENT);
+            appendNames("use ", phpClass.getTraitNames(), out);
+            out.append(";\n");
+        }
+
+        for (Field field : phpClass.getOwnFields()) {
+            if (!field.isConstant()) {
+                continue;
+            }
+            out.append(INDENT).append(visibility(field.getModifier())).append("const ").append(field.getName());
+            String value = field.getDefaultValuePresentation();
+            if (value != null && !value.isEmpty()) {
+                out.append(" = ").append(collapse(value));
+            }
+            out.append(";\n");
+        }
+
+        for (Method method : phpClass.getOwnMethods()) {
+            out.append(INDENT);
+            PhpModifier modifier = method.getModifier();
+            if (modifier.isAbstract() && !phpClass.isInterface()) {
+                out.append("abstract ");
+            }
+            if (modifier.isFinal()) {
+                out.append("final ");
+            }
+            out.append(modifier.isPrivate() ? "private " : modifier.isProtected() ? "protected " : "public ");
+            if (modifier.isStatic()) {
+                out.append("static ");
+            }
+            out.append(signature(method)).append(";\n");
+        }
+        out.append("}\n");
+    }
+
+    // "function name(Type $a, &$b = 1, ...$rest): ReturnType" from the declared types in the stubs
+    private static String signature(Function function) {
+        StringBuilder signature = new StringBuilder("function ").append(function.getName()).append("(");
+        Parameter[] parameters = function.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter parameter = parameters[i];
+            if (i > 0) {
+                signature.append(", ");
+            }
+            PhpType type = parameter.getDeclaredType();
+            if (!type.isEmpty()) {
+                signature.append(type).append(' ');
+            }
+            if (parameter.isPassByRef()) {
+                signature.append('&');
+            }
+            if (parameter.isVariadic()) {
+                signature.append("...");
+            }
+            signature.append('$').append(parameter.getName());
+            String defaultValue = parameter.getDefaultValuePresentation();
+            if (parameter.isOptional() && defaultValue != null && !defaultValue.isEmpty()) {
+                signature.append(" = ").append(collapse(defaultValue));
+            }
+        }
+        signature.append(")");
+        PhpType returnType = function.getDeclaredType();
+        if (!returnType.isEmpty()) {
+            signature.append(": ").append(returnType);
+        }
+        return signature.toString();
+    }
+
+    private static void appendNames(String keyword, String[] names, StringBuilder out) {
+        if (names.length > 0) {
+            out.append(keyword).append(String.join(", ", names));
+        }
+    }
+
+    // Constants are public unless declared otherwise
+    private static String visibility(PhpModifier modifier) {
+        if (modifier.isPrivate()) {
+            return "private ";
+        }
+        if (modifier.isProtected()) {
+            return "protected ";
+        }
+        return "";
+    }
+
+    private static int kindOrder(PhpNamedElement element) {
+        return element instanceof Constant ? 0 : element instanceof PhpClass ? 1 : 2;
+    }
+
+    // Joins multi-line default values onto one line
+    private static String collapse(String text) {
+        return text.trim().replaceAll("\\s+", " ");
+    }
+
+    private static String trimSlashes(String namespace) {
+        int start = namespace.startsWith("\\") ? 1 : 0;
+        int end = namespace.endsWith("\\") ? namespace.length() - 1 : namespace.length();
+        return start >= end ? "" : namespace.substring(start, end);
+    }
+}
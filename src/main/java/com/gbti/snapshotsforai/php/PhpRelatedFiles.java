@@ -0,0 +1,204 @@
+package com.gbti.snapshotsforai.php;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.jetbrains.php.PhpIndex;
+import com.jetbrains.php.lang.psi.PhpFile;
+import com.jetbrains.php.lang.psi.elements.ClassReference;
+import com.jetbrains.php.lang.psi.elements.Include;
+import com.jetbrains.php.lang.psi.elements.PhpClass;
+import com.jetbrains.php.lang.psi.elements.PhpNamedElement;
+import com.jetbrains.php.lang.psi.elements.PhpUse;
+import com.jetbrains.php.lang.psi.elements.StringLiteralExpression;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Expands a selection of PHP files with the files it depends on: the targets of {@code use}
+ * imports, extended classes, implemented interfaces and {@code include} / {@code require}
+ * statements with a literal path. Names are resolved through {@link PhpIndex}, level by level
+ * up to a fixed depth, so the result stays bounded. Project files are only followed if they pass
+ * the same path filter as the rest of the snapshot, such as {@code excluded_patterns} and .gitignore.
+ */
+public final class PhpRelatedFiles {
+    // __DIR__ . '/file.php' or dirname(__FILE__) . '/file.php'
+    private static final Pattern DIR_RELATIVE =
+            Pattern.compile("^(?:__DIR__|dirname\\(\\s*__FILE__\\s*\\))\\s*\\.\\s*(['\"])([^'\"$]+)\\1$");
+
+    private final Project project;
+    private final int depth;
+    private final boolean includeVendor;
+    private final Predicate<String> projectFileFilter;
+
+    /**
+     * @param projectFileFilter decides which related project files are added, by absolute path; library
+     *                          and vendor files are governed by {@code includeVendor} instead
+     */
+    public PhpRelatedFiles(Project project, int depth, boolean includeVendor, Predicate<String> projectFileFilter) {
+        this.project = project;
+        this.depth = depth;
+        this.includeVendor = includeVendor;
+        this.projectFileFilter = projectFileFilter;
+    }
+
+    /**
+     * Returns the selected files followed by the related files in the order they were found.
+     * Waits for indexing to finish, since names can't be resolved before that.
+     */
+    public List<String> expand(List<String> filePaths, ProgressIndicator indicator) {
+        if (depth <= 0 || filePaths.isEmpty()) {
+            return filePaths;
+        }
+        return ReadAction.nonBlocking(() -> expandInReadAction(filePaths, indicator))
+                .inSmartMode(project)
+                .wrapProgress(indicator)
+                .executeSynchronously();
+    }
+
+    private List<String> expandInReadAction(List<String> filePaths, ProgressIndicator indicator) {
+        Set<String> result = new LinkedHashSet<>(filePaths);
+        List<VirtualFile> level = new ArrayList<>();
+        for (String filePath : filePaths) {
+            VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
+            if (file != null) {
+                level.add(file);
+            }
+        }
+
+        for (int i = 0; i < depth && !level.isEmpty(); i++) {
+            List<VirtualFile> next = new ArrayList<>();
+            for (VirtualFile file : level) {
+                indicator.checkCanceled();
+                for (VirtualFile related : findDependencies(file)) {
+                    if (result.add(related.getPath())) {
+                        next.add(related);
+                    }
+                }
+            }
+            level = next;
+        }
+        return new ArrayList<>(result);
+    }
+
+    private Set<VirtualFile> findDependencies(VirtualFile file) {
+        Set<VirtualFile> dependencies = new LinkedHashSet<>();
+        PsiFile psiFile = file.isValid() ? PsiManager.getInstance(project).findFile(file) : null;
+        if (!(psiFile instanceof PhpFile)) {
+            return dependencies;
+        }
+
+        PhpIndex phpIndex = PhpIndex.getInstance(project);
+        // Imports of classes, functions and traits
+        for (PhpUse use : PsiTreeUtil.findChildrenOfType(psiFile, PhpUse.class)) {
+            String fqn = use.getFQN();
+            Collection<? extends PhpNamedElement> targets = phpIndex.getAnyByFQN(fqn);
+            if (targets.isEmpty()) {
+                targets = phpIndex.getFunctionsByFQN(fqn);
+            }
+            addFiles(targets, dependencies);
+        }
+
+        // Parents and interfaces, which may be in the same namespace and need no import
+        for (PhpClass phpClass : PsiTreeUtil.findChildrenOfType(psiFile, PhpClass.class)) {
+            List<ClassReference> references = new ArrayList<>(phpClass.getExtendsList().getReferenceElements());
+            references.addAll(phpClass.getImplementsList().getReferenceElements());
+            for (ClassReference reference : references) {
+                String fqn = reference.getFQN();
+                if (fqn != null) {
+                    addFiles(phpIndex.getAnyByFQN(fqn), dependencies);
+                }
+            }
+        }
+
+        for (Include include : PsiTreeUtil.findChildrenOfType(psiFile, Include.class)) {
+            VirtualFile target = resolveInclude(include, file);
+            if (target != null && isEligible(target)) {
+                dependencies.add(target);
+            }
+        }
+
+        dependencies.remove(file);
+        return dependencies;
+    }
+
+    private void addFiles(Collection<? extends PhpNamedElement> elements, Set<VirtualFile> files) {
+        for (PhpNamedElement element : elements) {
+            PsiFile containingFile = element.getContainingFile();
+            VirtualFile file = containingFile == null ? null : containingFile.getVirtualFile();
+            if (file != null && isEligible(file)) {
+                files.add(file);
+            }
+        }
+    }
+
+    // Only literal paths, relative to the including file or the project; anything computed is skipped
+    private VirtualFile resolveInclude(Include include, VirtualFile file) {
+        PsiElement argument = include.getArgument();
+        if (argument == null || file.getParent() == null) {
+            return null;
+        }
+        String relativePath;
+        if (argument instanceof StringLiteralExpression) {
+            relativePath = ((StringLiteralExpression) argument).getContents();
+        } else {
+            Matcher matcher = DIR_RELATIVE.matcher(argument.getText().trim());
+            if (!matcher.matches()) {
+                return null;
+            }
+            relativePath = matcher.group(2);
+        }
+        if (relativePath.isEmpty() || relativePath.contains("$")) {
+            return null;
+        }
+
+        VirtualFile target = relativePath.startsWith("/")
+                ? LocalFileSystem.getInstance().findFileByPath(relativePath)
+                : file.getParent().findFileByRelativePath(relativePath);
+        if (target == null && !relativePath.startsWith("/") && project.getBasePath() != null) {
+            target = LocalFileSystem.getInstance().findFileByPath(project.getBasePath() + "/" + relativePath);
+        }
+        return target == null || target.isDirectory() ? null : target;
+    }
+
+    // Project files only; library code such as vendor is followed only when asked for, bundled stubs never
+    private boolean isEligible(VirtualFile file) {
+        if (!file.isInLocalFileSystem()) {
+            return false;
+        }
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        boolean library = fileIndex.isInLibrary(file) || isUnderVendor(file, fileIndex);
+        if (library) {
+            return includeVendor;
+        }
+        return fileIndex.isInContent(file) && !fileIndex.isExcluded(file) && projectFileFilter.test(file.getPath());
+    }
+
+    // Only directories inside the content root count, so a project checked out below some vendor directory isn't all vendor
+    private static boolean isUnderVendor(VirtualFile file, ProjectFileIndex fileIndex) {
+        VirtualFile contentRoot = fileIndex.getContentRootForFile(file);
+        if (contentRoot == null) {
+            return false;
+        }
+        for (VirtualFile parent = file.getParent(); parent != null && !parent.equals(contentRoot); parent = parent.getParent()) {
+            if ("vendor".equals(parent.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package com.gbti.snapshotsforai.services;
+
+import com.gbti.snapshotsforai.core.FileBody;
+import com.gbti.snapshotsforai.core.FileContentReader;
+import com.gbti.snapshotsforai.core.FileContentSource;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.persistent.PersistentFS;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Serves files the IDE already holds a document for, such as open editors, from memory: the
+ * document text, or for a saved document whose text doesn't map back to the file's bytes, the
+ * bytes the virtual file system has cached. Files without a document, and saved documents whose
+ * content is neither, are left to the usual disk reads, so this never loads anything new.
+ */
+public final class EditorContentSource implements FileContentSource {
+    @Override
+    public boolean holds(String filePath) {
+        return cachedDocument(findFile(filePath)) != null;
+    }
+
+    @Override
+    public boolean hasUnsavedChanges(String filePath) {
+        Document document = cachedDocument(findFile(filePath));
+        return document != null && FileDocumentManager.getInstance().isDocumentUnsaved(document);
+    }
+
+    @Override
+    public FileBody read(String filePath, FileContentReader contentReader) {
+        VirtualFile file = findFile(filePath);
+        Document document = cachedDocument(file);
+        if (document == null) {
+            return null;
+        }
+        // An immutable snapshot of the text, safe to take without a read action
+        String text = document.getImmutableCharSequence().toString();
+
+        if (FileDocumentManager.getInstance().isDocumentUnsaved(document)) {
+            // Decoded like a file so truncation applies; there are no bytes on disk to hash
+            FileBody body = contentReader.decode(text.getBytes(StandardCharsets.UTF_8));
+            return body.getError() != null ? body : FileBody.text(body.getText(), null);
+        }
+
+        try {
+            // A saved document only stands for the file while the IDE has seen its latest version
+            if (file.getTimeStamp() != Files.getLastModifiedTime(Paths.get(filePath)).toMillis()) {
+                return null;
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+        if (isStoredAsText(file)) {
+            // The text encodes to exactly the bytes on disk, so the hash matches a disk read
+            return contentReader.decode(text.getBytes(StandardCharsets.UTF_8));
+        }
+        if (PersistentFS.getInstance().getCurrentContentId(file) > 0) {
+            // The VFS holds the bytes, so this doesn't touch the disk
+            try {
+                return contentReader.decode(file.contentsToByteArray());
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+        FileBody body = contentReader.decode(text.getBytes(StandardCharsets.UTF_8));
+        return body.getError() != null ? body : FileBody.text(body.getText(), null);
+    }
+
+    private static VirtualFile findFile(String filePath) {
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
+        return file == null || !file.isValid() || file.isDirectory() ? null : file;
+    }
+
+    // Looks up documents that are already loaded without creating one
+    private static Document cachedDocument(VirtualFile file) {
+        return file == null ? null : FileDocumentManager.getInstance().getCachedDocument(file);
+    }
+
+    // UTF-8 without a byte order mark and with \n line breaks, the form a document's text is kept in
+    private static boolean isStoredAsText(VirtualFile file) {
+        return StandardCharsets.UTF_8.equals(file.getCharset()) && file.getBOM() == null
+                && "\n".equals(file.getDetectedLineSeparator());
+    }
+}
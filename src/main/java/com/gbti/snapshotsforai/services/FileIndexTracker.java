@@ -0,0 +1,340 @@
+package com.gbti.snapshotsforai.services;
+
+import com.gbti.snapshotsforai.core.FileIndex;
+import com.gbti.snapshotsforai.core.GitIgnore;
+import com.gbti.snapshotsforai.core.SnapshotConfig;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps the persisted {@link FileIndex} in .snapshots in step with the project. Loading, rebuilding,
+ * VFS events and saving all run on one sequential executor, so the index never sees two writers.
+ * Changes from VFS events are written a few seconds after they settle, and once more on dispose.
+ */
+final class FileIndexTracker implements Disposable {
+    private static final Logger LOG = Logger.getInstance(FileIndexTracker.class);
+    private static final int SAVE_DELAY_SECONDS = 5;
+
+    private final Project project;
+    private final SnapshotService snapshotService;
+    private final ExecutorService executor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Snapshots for AI file index", 1);
+
+    private volatile FileIndex index;
+    private volatile SnapshotConfig indexedConfig;
+    private Future<FileIndex> rebuild;
+    private boolean dirty;
+    private ScheduledFuture<?> pendingSave;
+
+    FileIndexTracker(Project project, SnapshotService snapshotService) {
+        this.project = project;
+        this.snapshotService = snapshotService;
+
+        ApplicationManager.getApplication().getMessageBus().connect(this)
+                .subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+                    @Override
+                    public void after(@NotNull List<? extends VFileEvent> events) {
+                        // Queued behind a load still in progress, so changes made meanwhile aren't lost
+                        if (indexedConfig != null) {
+                            List<? extends VFileEvent> batch = List.copyOf(events);
+                            executor.execute(() -> applyEvents(batch));
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Called once at startup. A persisted index built for this config is reconciled with the disk
+     * (files changed or deleted while the IDE was closed) and only then served; files created in
+     * the meantime arrive through the VFS refresh. Without a usable index the project is enumerated.
+     */
+    synchronized void load(SnapshotConfig config) {
+        indexedConfig = config;
+        rebuild = executor.submit(() -> {
+            FileIndex loaded = loadPersisted(config);
+            return loaded != null ? loaded : rebuildNow(config);
+        });
+    }
+
+    /**
+     * Returns the indexed project files for the given config. If the index is still loading, is missing or
+     * was built for a different config, the caller waits for it; cancelling stops the wait, not the rebuild.
+     */
+    List<String> getProjectFiles(SnapshotConfig config, ProgressIndicator indicator) throws IOException {
+        FileIndex current = index;
+        if (current != null && current.getFingerprint().equals(fingerprint(config))) {
+            return current.getPaths();
+        }
+
+        Future<FileIndex> pending = scheduleRebuild(config);
+        while (true) {
+            indicator.checkCanceled();
+            try {
+                return pending.get(100, TimeUnit.MILLISECONDS).getPaths();
+            } catch (TimeoutException ignored) {
+                // Poll again so a cancelled snapshot stops waiting
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof ProcessCanceledException) {
+                    throw (ProcessCanceledException) cause;
+                }
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Project files could not be listed: " + cause.getMessage(), cause);
+            }
+        }
+    }
+
+    // Bytes a snapshot of all indexed files would read, optionally without PHP files; -1 while there is no index yet
+    long getIndexedBytes(boolean withoutPhp) {
+        FileIndex current = index;
+        if (current == null) {
+            return -1;
+        }
+        return withoutPhp ? current.getTextBytes() - current.getPhpBytes() : current.getTextBytes();
+    }
+
+    private synchronized Future<FileIndex> scheduleRebuild(SnapshotConfig config) {
+        if (rebuild != null && !rebuild.isDone() && config == indexedConfig) {
+            return rebuild;
+        }
+        indexedConfig = config;
+        rebuild = executor.submit(() -> rebuildNow(config));
+        return rebuild;
+    }
+
+    private FileIndex loadPersisted(SnapshotConfig config) {
+        Path indexFile = getIndexFile();
+        if (indexFile == null || project.isDisposed() || !Files.exists(indexFile)) {
+            return null;
+        }
+        try {
+            FileIndex loaded = FileIndex.load(indexFile, config.getMaxFileBytes());
+            if (loaded == null || !loaded.getFingerprint().equals(fingerprint(config))) {
+                return null;
+            }
+            long start = System.currentTimeMillis();
+            boolean changed = loaded.reconcile(() -> {
+                if (project.isDisposed()) {
+                    throw new ProcessCanceledException();
+                }
+            });
+            index = loaded;
+            if (changed) {
+                save(loaded);
+            }
+            LOG.info("Loaded file index with " + loaded.getPaths().size() + " files, reconciled in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return loaded;
+        } catch (IOException ex) {
+            LOG.warn("File index could not be loaded", ex);
+            return null;
+        }
+    }
+
+    // A failed enumeration keeps the previous index and is reported to whoever waits for the rebuild
+    private FileIndex rebuildNow(SnapshotConfig config) throws IOException {
+        if (project.isDisposed()) {
+            throw new ProcessCanceledException();
+        }
+        long start = System.currentTimeMillis();
+        List<String> files;
+        try {
+            files = snapshotService.collectProjectFiles(config, new EmptyProgressIndicator());
+        } catch (IOException ex) {
+            LOG.warn("Project files could not be listed", ex);
+            throw ex;
+        }
+        FileIndex previous = index;
+        FileIndex rebuilt = FileIndex.build(fingerprint(config), config.getMaxFileBytes(), files, () -> {
+        });
+        index = rebuilt;
+        // Only written when something changed, so a rescan doesn't touch the file or wake file watchers
+        if (!rebuilt.isSameAs(previous)) {
+            save(rebuilt);
+        }
+        LOG.info("Indexed " + files.size() + " files in " + (System.currentTimeMillis() - start) + " ms");
+        return rebuilt;
+    }
+
+    private void applyEvents(List<? extends VFileEvent> events) {
+        FileIndex current = index;
+        SnapshotConfig config = indexedConfig;
+        String basePath = project.getBasePath();
+        if (current == null || config == null || basePath == null || project.isDisposed()) {
+            return;
+        }
+
+        if (config.isRespectGitignore() && touchesIgnoreFile(events)) {
+            // Ignore rules can change the eligibility of any number of files
+            snapshotService.invalidateGitIgnore();
+            scheduleRebuild(config);
+            return;
+        }
+
+        String snapshotsPath = basePath + "/.snapshots";
+        boolean changed = false;
+        for (VFileEvent event : events) {
+            // A copy event's own path is the original; the index cares about the new file
+            String path = event instanceof VFileCopyEvent
+                    ? ((VFileCopyEvent) event).getNewParent().getPath() + "/" + ((VFileCopyEvent) event).getNewChildName()
+                    : event.getPath();
+            if (!isUnder(path, basePath) || isUnder(path, snapshotsPath)) {
+                continue;
+            }
+
+            if (event instanceof VFileContentChangeEvent) {
+                if (current.get(path) != null) {
+                    current.update(path);
+                    changed = true;
+                }
+            } else if (event instanceof VFileDeleteEvent) {
+                current.removeTree(path);
+                changed = true;
+            } else if (event instanceof VFileCreateEvent && !((VFileCreateEvent) event).isDirectory()
+                    || event instanceof VFileCopyEvent && !((VFileCopyEvent) event).getFile().isDirectory()) {
+                if (isEligible(path, basePath, config)) {
+                    current.update(path);
+                    changed = true;
+                }
+            } else if (event instanceof VFileCreateEvent || event instanceof VFileCopyEvent || event instanceof VFileMoveEvent
+                    || event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+                // Whole directories may have appeared or changed eligibility; rescan rather than guess
+                scheduleRebuild(config);
+                return;
+            }
+        }
+
+        if (changed) {
+            scheduleSave();
+        }
+    }
+
+    // Saves and autosaves come in bursts; the index is written once they settle rather than on every event
+    private synchronized void scheduleSave() {
+        dirty = true;
+        if (pendingSave == null || pendingSave.isDone()) {
+            pendingSave = AppExecutorUtil.getAppScheduledExecutorService()
+                    .schedule(() -> executor.execute(this::flush), SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void flush() {
+        FileIndex current = index;
+        synchronized (this) {
+            if (!dirty || current == null) {
+                return;
+            }
+            dirty = false;
+        }
+        save(current);
+    }
+
+    private boolean isEligible(String path, String basePath, SnapshotConfig config) {
+        GitIgnore gitIgnore = snapshotService.getGitIgnore(config);
+        if (!config.getMatcher().isIncludedPath(path.substring(basePath.length() + 1), gitIgnore)) {
+            return false;
+        }
+        if (config.isFilesystemEnumeration()) {
+            return true;
+        }
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+        if (file == null) {
+            return false;
+        }
+        return ReadAction.compute(() -> {
+            ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+            return !project.isDisposed() && fileIndex.isInContent(file) && !fileIndex.isExcluded(file);
+        });
+    }
+
+    private static boolean touchesIgnoreFile(List<? extends VFileEvent> events) {
+        for (VFileEvent event : events) {
+            String path = event.getPath();
+            if (path.endsWith("/.gitignore") || path.endsWith("/.git/info/exclude")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void save(FileIndex current) {
+        Path indexFile = getIndexFile();
+        if (indexFile == null || !Files.isDirectory(indexFile.getParent())) {
+            return;
+        }
+        try {
+            current.save(indexFile);
+        } catch (IOException ex) {
+            LOG.warn("File index could not be saved", ex);
+        }
+    }
+
+    private Path getIndexFile() {
+        String basePath = project.getBasePath();
+        return basePath == null ? null : Paths.get(basePath, ".snapshots", FileIndex.FILE_NAME);
+    }
+
+    // Ties the index to both the config it was filtered with and the project location its paths point into
+    private String fingerprint(SnapshotConfig config) {
+        return config.getFingerprint() + " " + project.getBasePath();
+    }
+
+    private static boolean isUnder(String path, String directory) {
+        return path.startsWith(directory) && (path.length() == directory.length() || path.charAt(directory.length()) == '/');
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            if (pendingSave != null) {
+                pendingSave.cancel(false);
+            }
+        }
+        executor.shutdownNow();
+        try {
+            // Lets an event batch that is being applied finish, so it doesn't write the file at the same time
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // Changes still waiting for the delayed save would otherwise only be picked up by the next reconcile
+        flush();
+    }
+}
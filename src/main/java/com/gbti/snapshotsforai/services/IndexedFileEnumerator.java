@@ -0,0 +1,114 @@
+package com.gbti.snapshotsforai.services;
+
+import com.gbti.snapshotsforai.core.GitIgnore;
+import com.gbti.snapshotsforai.core.PatternMatcher;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VFileProperty;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileVisitor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Enumerates project files from the IDE's project model and VFS instead of walking the disk.
+ * Content roots, excluded folders and ignored files come from the project configuration;
+ * {@code excluded_patterns} / {@code included_patterns} are applied on top.
+ */
+public final class IndexedFileEnumerator {
+    private final Project project;
+    private final PatternMatcher matcher;
+    private final GitIgnore gitIgnore;
+
+    // gitIgnore holds the rules of the project directory, or is null when .gitignore files are not respected
+    public IndexedFileEnumerator(Project project, PatternMatcher matcher, GitIgnore gitIgnore) {
+        this.project = project;
+        this.matcher = matcher;
+        this.gitIgnore = gitIgnore;
+    }
+
+    // Returns absolute, forward-slash separated paths, or null if the project has no usable content roots
+    public List<String> collect(String basePath, ProgressIndicator indicator) {
+        return ReadAction.nonBlocking(() -> collectInReadAction(basePath, indicator))
+                .wrapProgress(indicator)
+                .executeSynchronously();
+    }
+
+    private List<String> collectInReadAction(String basePath, ProgressIndicator indicator) {
+        VirtualFile[] contentRoots = ProjectRootManager.getInstance(project).getContentRoots();
+        if (contentRoots.length == 0) {
+            return null;
+        }
+
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        VirtualFile baseDir = LocalFileSystem.getInstance().findFileByPath(basePath);
+        // Nested content roots are visited as part of their parent; the set keeps each file once
+        Set<String> fileList = new LinkedHashSet<>();
+
+        for (VirtualFile contentRoot : contentRoots) {
+            if (!contentRoot.isInLocalFileSystem()) {
+                continue;
+            }
+            VirtualFile relativeTo = baseDir != null && VfsUtilCore.isAncestor(baseDir, contentRoot, false) ? baseDir : contentRoot;
+            // Content roots outside the project directory aren't covered by its .gitignore files
+            GitIgnore rootGitIgnore = relativeTo.equals(baseDir) ? gitIgnore : null;
+            if (isUnderExcludedDirectory(contentRoot, relativeTo, rootGitIgnore)) {
+                continue;
+            }
+
+            VfsUtilCore.visitChildrenRecursively(contentRoot, new VirtualFileVisitor<Void>() {
+                @Override
+                public @NotNull Result visitFileEx(@NotNull VirtualFile file) {
+                    indicator.checkCanceled();
+                    if (file.equals(relativeTo)) {
+                        return CONTINUE;
+                    }
+                    if (fileIndex.isExcluded(file)) {
+                        return SKIP_CHILDREN;
+                    }
+
+                    String relativePath = VfsUtilCore.getRelativePath(file, relativeTo);
+                    if (relativePath == null) {
+                        relativePath = file.getName();
+                    }
+
+                    if (file.isDirectory()) {
+                        if (matcher.isExcludedDirectory(file.getName(), relativePath)
+                                || rootGitIgnore != null && rootGitIgnore.isIgnored(relativePath, true)) {
+                            return SKIP_CHILDREN;
+                        }
+                    } else if (!file.is(VFileProperty.SPECIAL)) {
+                        boolean gitIgnored = rootGitIgnore != null && rootGitIgnore.isIgnored(relativePath, false);
+                        if (matcher.isIncludedFile(file.getName(), relativePath, gitIgnored)) {
+                            fileList.add(file.getPath());
+                        }
+                    }
+                    return CONTINUE;
+                }
+            });
+        }
+
+        return new ArrayList<>(fileList);
+    }
+
+    // A content root nested below the project directory still honours patterns on the folders above it
+    private boolean isUnderExcludedDirectory(VirtualFile contentRoot, VirtualFile relativeTo, GitIgnore rootGitIgnore) {
+        for (VirtualFile dir = contentRoot.getParent(); dir != null && !dir.equals(relativeTo); dir = dir.getParent()) {
+            String relativePath = VfsUtilCore.getRelativePath(dir, relativeTo);
+            if (relativePath != null && (matcher.isExcludedDirectory(dir.getName(), relativePath)
+                    || rootGitIgnore != null && rootGitIgnore.isIgnored(relativePath, true))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,24 +1,258 @@
 package com.gbti.snapshotsforai.services;
 
+import com.gbti.snapshotsforai.core.DefaultConfig;
+import com.gbti.snapshotsforai.core.GitIgnore;
+import com.gbti.snapshotsforai.core.PatternMatcher;
+import com.gbti.snapshotsforai.core.ProjectFileWalker;
+import com.gbti.snapshotsforai.core.RenderCache;
+import com.gbti.snapshotsforai.core.SnapshotConfig;
+import com.gbti.snapshotsforai.core.SnapshotRetention;
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
-import org.json.JSONArray;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
-public final class SnapshotService {
+public final class SnapshotService implements Disposable {
     private static final Logger LOG = Logger.getInstance(SnapshotService.class);
     private final Project project;
 
+    // Parsed config and compiled matchers, reused until a VFS event touches config.json
+    private final Object configLock = new Object();
+    private volatile SnapshotConfig cachedConfig;
+    private volatile boolean configStale = true;
+    private String configError;
+
+    private final FileIndexTracker fileIndex;
+
+    // Old snapshots are archived one run at a time, after the new snapshot has been written
+    private final ExecutorService retentionExecutor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Snapshots for AI retention", 1);
+    private final AtomicBoolean retentionQueued = new AtomicBoolean();
+
+    // Rendered bodies from earlier snapshots; dropped whenever the config changes since it affects rendering
+    private RenderCache renderCache;
+    private String renderCacheConfig;
+
+    // Compiled .gitignore rules, kept until an ignore file changes
+    private GitIgnore gitIgnore;
+    private boolean gitIgnoreInfoExclude;
+
     public SnapshotService(Project project) {
         this.project = project;
+        this.fileIndex = new FileIndexTracker(project, this);
+        Disposer.register(this, fileIndex);
+
+        ApplicationManager.getApplication().getMessageBus().connect(this)
+                .subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+                    @Override
+                    public void after(@NotNull List<? extends VFileEvent> events) {
+                        Path configFilePath = getConfigPath();
+                        if (configFilePath == null) {
+                            return;
+                        }
+                        String configPath = configFilePath.toString().replace('\\', '/');
+                        for (VFileEvent event : events) {
+                            // Also catches the .snapshots directory itself being moved or deleted
+                            if (configPath.startsWith(event.getPath())) {
+                                configStale = true;
+                                return;
+                            }
+                        }
+                    }
+                });
+    }
+
+    @Nullable
+    public Path getConfigPath() {
+        String basePath = project.getBasePath();
+        return basePath == null ? null : Paths.get(basePath, ".snapshots", "config.json");
+    }
+
+    /**
+     * Returns the cached config, re-reading config.json only after it changed. If the file no longer
+     * parses, the last good config stays in use and the error is reported once per change.
+     */
+    public SnapshotConfig getConfig() throws IOException {
+        if (!configStale && cachedConfig != null) {
+            return cachedConfig;
+        }
+
+        synchronized (configLock) {
+            if (!configStale && cachedConfig != null) {
+                return cachedConfig;
+            }
+
+            Path configFilePath = getConfigPath();
+            if (configFilePath == null) {
+                throw new IOException("Project base path is null");
+            }
+            if (!Files.exists(configFilePath)) {
+                throw new IOException("Config file not found. Please restart the IDE.");
+            }
+
+            // Cleared before reading so an event arriving mid-read marks the result stale again
+            configStale = false;
+            String content;
+            try {
+                content = Files.readString(configFilePath);
+            } catch (IOException ex) {
+                configStale = true;
+                throw ex;
+            }
+
+            try {
+                cachedConfig = SnapshotConfig.parse(content);
+                configError = null;
+                LOG.info("Loaded snapshot config from: " + configFilePath);
+            } catch (JSONException ex) {
+                String error = "Invalid config.json: " + ex.getMessage();
+                if (cachedConfig == null) {
+                    configStale = true;
+                    throw new IOException(error, ex);
+                }
+                if (!error.equals(configError)) {
+                    configError = error;
+                    LOG.warn(error);
+                    NotificationGroupManager.getInstance().getNotificationGroup("Snapshots for AI")
+                            .createNotification(error + ". The last valid configuration is used until the file is fixed.",
+                                    NotificationType.ERROR)
+                            .notify(project);
+                }
+            }
+            return cachedConfig;
+        }
+    }
+
+    // Loads and reconciles the persisted file index, or rebuilds it if it is missing or was built for another config
+    public void loadFileIndex() throws IOException {
+        fileIndex.load(getConfig());
+    }
+
+    // Eligible project files from the file index; only waits for a walk if the index isn't usable yet
+    public List<String> getProjectFiles(SnapshotConfig config, ProgressIndicator indicator) throws IOException {
+        return fileIndex.getProjectFiles(config, indicator);
+    }
+
+    // PHP files are left out when they are written as outlines; -1 while the index isn't ready
+    public long getIndexedProjectBytes(boolean phpOutline) {
+        return fileIndex.getIndexedBytes(phpOutline);
+    }
+
+    public synchronized RenderCache getRenderCache(SnapshotConfig config) {
+        if (renderCache == null || !config.getFingerprint().equals(renderCacheConfig)) {
+            renderCache = new RenderCache(config.getRenderCacheBytes());
+            renderCacheConfig = config.getFingerprint();
+        }
+        return renderCache;
+    }
+
+    /**
+     * Archives or deletes snapshots outside the retention limits in the background. Runs requested
+     * while one is still queued are folded into it, so a burst of snapshots causes a single pass.
+     */
+    public void scheduleRetention(SnapshotConfig config) {
+        String basePath = project.getBasePath();
+        SnapshotRetention retention = config.getRetention();
+        if (basePath == null || !retention.isEnabled() || !retentionQueued.compareAndSet(false, true)) {
+            return;
+        }
+        retentionExecutor.execute(() -> {
+            retentionQueued.set(false);
+            Path snapshotsDir = Paths.get(basePath, ".snapshots");
+            try {
+                int removed = retention.apply(snapshotsDir, () -> {
+                    if (project.isDisposed()) {
+                        throw new ProcessCanceledException();
+                    }
+                });
+                if (removed > 0) {
+                    LOG.info("Moved " + removed + " old snapshot(s) out of " + snapshotsDir);
+                    refreshSnapshotsDirectory(snapshotsDir);
+                }
+            } catch (ProcessCanceledException ignored) {
+                // Project closed
+            } catch (IOException ex) {
+                LOG.warn("Old snapshots could not be archived", ex);
+            }
+        });
+    }
+
+    // The project's ignore rules, or null if the config doesn't respect .gitignore
+    public synchronized GitIgnore getGitIgnore(SnapshotConfig config) {
+        String basePath = project.getBasePath();
+        if (!config.isRespectGitignore() || basePath == null) {
+            return null;
+        }
+        if (gitIgnore == null || gitIgnoreInfoExclude != config.isRespectGitInfoExclude()) {
+            gitIgnore = GitIgnore.load(Paths.get(basePath), config.isRespectGitInfoExclude());
+            gitIgnoreInfoExclude = config.isRespectGitInfoExclude();
+        }
+        return gitIgnore;
+    }
+
+    synchronized void invalidateGitIgnore() {
+        gitIgnore = null;
+    }
+
+    // Enumerates the eligible project files from scratch
+    List<String> collectProjectFiles(SnapshotConfig config, ProgressIndicator indicator) throws IOException {
+        String basePath = project.getBasePath();
+        if (basePath == null) {
+            return new ArrayList<>();
+        }
+        PatternMatcher matcher = config.getMatcher();
+        GitIgnore gitIgnore = getGitIgnore(config);
+
+        // Prefer the IDE's project model; the filesystem walk remains as a fallback
+        if (!config.isFilesystemEnumeration()) {
+            try {
+                List<String> indexedFiles = new IndexedFileEnumerator(project, matcher, gitIgnore).collect(basePath, indicator);
+                if (indexedFiles != null) {
+                    return indexedFiles;
+                }
+            } catch (ProcessCanceledException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                LOG.warn("Falling back to a filesystem walk after the project model enumeration failed", ex);
+            }
+        }
+
+        // A failed walk is reported instead of being mistaken for an empty project
+        return new ProjectFileWalker(matcher, gitIgnore).walk(Paths.get(basePath), indicator::checkCanceled);
+    }
+
+    @Override
+    public void dispose() {
+        retentionExecutor.shutdownNow();
     }
 
     public void initializeSnapshotDirectory() throws IOException {
@@ -33,83 +267,21 @@ public final class SnapshotService {
         Path snapshotsDir = Paths.get(basePath, ".snapshots");
         LOG.info("Snapshots directory path: " + snapshotsDir);
 
+        boolean changed = false;
         if (!Files.exists(snapshotsDir)) {
             LOG.info("Creating snapshots directory");
             Files.createDirectory(snapshotsDir);
+            changed = true;
         } else {
             LOG.info("Snapshots directory already exists");
         }
 
-        Path configFilePath = snapshotsDir.resolve("config.json");
+        Path configFilePath = getConfigPath();
         if (!Files.exists(configFilePath)) {
             LOG.info("Creating config file at: " + configFilePath);
-            JSONObject config = new JSONObject();
-            config.put("excluded_patterns", new JSONArray()
-                .put(".git")
-                .put(".gitignore")
-                .put("gradle")
-                .put("gradlew")
-                .put("gradlew.*")
-                .put("node_modules")
-                .put("vendor")
-                .put(".snapshots")
-                .put(".idea")
-                .put(".vscode")
-                .put("*.log")
-                .put("*.tmp")
-                .put("target")
-                .put("dist")
-                .put("build")
-                .put(".DS_Store")
-                .put("*.bak")
-                .put("*.swp")
-                .put("*.swo")
-                .put("*.lock")
-                .put("*.iml")
-                .put("coverage")
-                .put("*.min.js")
-                .put("*.min.css")
-                .put("netlify.toml")
-                .put("package-lock.json")
-                .put("__pycache__")
-                .put("LICENSE")
-            );
-
-            config.put("included_patterns", new JSONArray()
-                .put("build.gradle")
-                .put("settings.gradle")
-                .put("gradle.properties")
-                .put("pom.xml")
-                .put("Makefile")
-                .put("CMakeLists.txt")
-                .put("package.json")
-                .put("yarn.lock")
-                .put("requirements.txt")
-                .put("Pipfile")
-                .put("Pipfile.lock")
-                .put("Gemfile")
-                .put("Gemfile.lock")
-                .put("composer.json")
-                .put("composer.lock")
-                .put(".editorconfig")
-                .put(".eslintrc.json")
-                .put(".eslintrc.js")
-                .put(".prettierrc")
-                .put(".babelrc")
-                .put(".env")
-                .put(".dockerignore")
-                .put(".gitattributes")
-                .put(".stylelintrc")
-                .put(".npmrc")
-            );
-
-            JSONObject defaultConfig = new JSONObject();
-            defaultConfig.put("default_prompt", "Enter your prompt here");
-            defaultConfig.put("default_include_entire_project_structure", true);
-            defaultConfig.put("default_include_all_files", false);
-
-            config.put("default", defaultConfig);
-            Files.write(configFilePath, config.toString(4).getBytes());
+            JSONObject config = DefaultConfig.create();
+            Files.write(configFilePath, config.toString(4).getBytes(StandardCharsets.UTF_8));
+            changed = true;
         } else {
             LOG.info("Config file already exists at: " + configFilePath);
         }
@@ -174,11 +346,34 @@ public final class SnapshotService {
                 "  - `.dockerignore`\n" +
                 "  - `.gitattributes`\n" +
                 "  - `.stylelintrc`\n" +
-                "  - `.npmrc`\n\n" +
+                "  - `.npmrc`\n" +
+                "- `file_enumeration`: `index` lists files from the IDE's project model, so folders excluded in the project settings and every content root are handled automatically; `filesystem` walks the project directory on disk instead.\n" +
+                "- `read_concurrency`: How many files are read in parallel while a snapshot is written. `1` reads them one at a time.\n" +
+                "- `read_buffer_mb`: Upper bound, in megabytes, on the memory taken by file contents read ahead of the writer. Read-ahead text is held at up to two bytes per byte on disk, so files larger than half of this are streamed from disk.\n" +
+                "- `max_file_size_kb`: Files larger than this are cut off with a `... truncated` marker. `0` includes every file in full. Binary files are detected from their content and replaced by a one-line placeholder.\n" +
+                "- `structure_mode`: `full` lists every file in the project structure; `compact` folds chains of single-child directories into one line and summarizes large directories as `+ name/ (N files)`.\n" +
+                "- `structure_max_entries`: In `compact` mode, directories with more direct children than this are summarized instead of listed.\n" +
+                "- `render_cache_mb`: Memory, in megabytes, for file contents kept from earlier snapshots. Unchanged files are copied from this cache instead of being read again. `0` disables the cache.\n" +
+                "- `delta_format`: How a snapshot with \"Only changes since the last snapshot\" shows modified files: `diff` writes unified diffs, `full` writes the new file contents.\n" +
+                "- `max_tokens`: Approximate token budget for a snapshot. Open files are written first; once the budget runs low, remaining files are truncated and then reduced to a one-line note. `0` means no limit.\n" +
+                "- `related_files_depth`: How many levels of imports, parent classes, interfaces and literal includes \"Add related files\" follows from the selected PHP files.\n" +
+                "- `related_files_include_vendor`: Whether \"Add related files\" also follows dependencies into `vendor` and other libraries.\n" +
+                "- `respect_gitignore`: Leaves out files and directories ignored by the project's `.gitignore` files, on top of `excluded_patterns`. `included_patterns` can still bring ignored files back, except inside ignored directories.\n" +
+                "- `respect_git_info_exclude`: With `respect_gitignore`, also applies the repository's `.git/info/exclude`.\n" +
+                "- `php_outline`: Writes PHP files as outlines (namespaces, class, interface, trait and enum declarations with their parents, constants, and method signatures with their declared types, all fully qualified) instead of their full contents. `all` outlines every PHP file, `unopened` keeps files open in the editor in full, `off` disables it.\n" +
+                "- `redact_secrets`: Replaces private keys, API tokens, passwords in URLs and credential values in `.env`-style files with `[REDACTED:...]` placeholders while the snapshot is written.\n" +
+                "- `redaction_patterns`: Extra regular expressions whose matches are replaced with `[REDACTED:secret]` when `redact_secrets` is on.\n" +
+                "- `stats_footer`: Adds a section with the time, file counts and bytes of each snapshot phase, and the slowest directories, to the end of the snapshot.\n" +
+                "- `metrics_log`: Appends those numbers as one JSON line per snapshot to `.snapshots/metrics.jsonl`.\n" +
+                "- `retention_keep_snapshots` / `retention_max_age_days` / `retention_max_total_mb`: Older snapshots are moved out of this directory in the background once there are more than this many, they are older than this many days or all snapshots together exceed this size. `0` disables a limit. The newest snapshot and those it still reads from are kept.\n" +
+                "- `retention_archive`: Zips removed snapshots with their manifests into `archive/` instead of deleting them.\n\n" +
                 "## Default Configuration\n\n" +
                 "- `default_prompt`: The default prompt text that will be displayed in the snapshot dialog.\n" +
                 "- `default_include_entire_project_structure`: Whether to include the entire project structure by default when creating a snapshot.\n" +
                 "- `default_include_all_files`: Whether to include all project files by default when creating a snapshot.\n" +
+                "- `default_git_base_ref`: The branch, tag or commit that \"Only files changed in git since\" compares against. Modified, staged and untracked files are included.\n" +
+                "- `default_git_diff_hunks`: Whether git-changed files are written as diffs by default instead of full contents.\n" +
+                "- `default_include_related_files`: Whether \"Add related files\" is checked by default.\n" +
                 "\n" +
                 "## Usage\n\n" +
                 "To create a snapshot, follow these steps:\n\n" +
@@ -193,11 +388,31 @@ public final class SnapshotService {
                 "2. Follow the same steps as above to create a snapshot.\n\n" +
                 "The snapshot will be saved in the `.snapshots` directory within your project.\n";
 
-        Files.write(readmeFilePath, readmeContent.getBytes());
+        // Rewriting an unchanged readme on every project open only churns file watchers
+        byte[] readmeBytes = readmeContent.getBytes(StandardCharsets.UTF_8);
+        if (!Files.exists(readmeFilePath) || !Arrays.equals(Files.readAllBytes(readmeFilePath), readmeBytes)) {
+            LOG.info("Writing readme file at: " + readmeFilePath);
+            Files.write(readmeFilePath, readmeBytes);
+            changed = true;
+        } else {
+            LOG.info("Readme file is up to date at: " + readmeFilePath);
+        }
+
+        if (changed) {
+            refreshSnapshotsDirectory(snapshotsDir);
+        }
+    }
 
-        VirtualFileManager.getInstance().asyncRefresh(() -> {
-            System.out.println("Virtual file system refreshed");
-            LOG.info("Virtual file system refreshed");
-        });
+    // Refreshes only the .snapshots directory instead of the whole VFS
+    private void refreshSnapshotsDirectory(Path snapshotsDir) {
+        VirtualFile snapshotsVirtualDir = LocalFileSystem.getInstance().findFileByNioFile(snapshotsDir);
+        if (snapshotsVirtualDir == null) {
+            // Newly created directory: a synchronous refresh of this one path makes it known to the VFS
+            snapshotsVirtualDir = LocalFileSystem.getInstance().refreshAndFindFileByNioFile(snapshotsDir);
+        }
+        if (snapshotsVirtualDir != null) {
+            VfsUtil.markDirtyAndRefresh(true, false, true, snapshotsVirtualDir);
+            LOG.info("Refreshed snapshots directory");
+        }
     }
 }
@@ -0,0 +1,27 @@
+package com.gbti.snapshotsforai.core;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SecretRedactorTest {
+    private final SecretRedactor redactor = SecretRedactor.create(List.of());
+
+    @Test
+    public void redactsCredentialKeysInEnvFiles() {
+        assertEquals("API_KEY=[REDACTED]\n", redactor.redact(".env", "API_KEY=abc123\n"));
+        assertEquals("export DB_PASSWORD=[REDACTED]\n", redactor.redact(".env", "export DB_PASSWORD=hunter2\n"));
+        assertEquals("//registry.npmjs.org/:_authToken=[REDACTED]\n",
+                redactor.redact(".npmrc", "//registry.npmjs.org/:_authToken=abc123\n"));
+    }
+
+    // Credential words inside longer words are not credentials
+    @Test
+    public void keepsKeysThatOnlyContainCredentialWords() {
+        assertEquals("KEYBOARD=us\n", redactor.redact(".env", "KEYBOARD=us\n"));
+        assertEquals("MONKEY_COUNT=3\n", redactor.redact(".env", "MONKEY_COUNT=3\n"));
+        assertEquals("TOKENIZER=whitespace\n", redactor.redact(".env", "TOKENIZER=whitespace\n"));
+    }
+}